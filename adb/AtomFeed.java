@@ -0,0 +1,41 @@
+package adb;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Class AtomFeed: Write results as an Atom feed in the format of the Bing search API,
+ * the same format QueryCLI.parseXml reads.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public class AtomFeed {
+
+	/**
+	 * @param results entries of the feed.
+	 * @return xml bytes in UTF-8.
+	 */
+	public static byte[] write(List<SingleResult> results) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("<?xml version=\"1.0\" encoding=\"utf-8\" ?>");
+		sb.append("<feed xmlns:base=\"https://api.datamarket.azure.com/Data.ashx/Bing/Search/Web\"");
+		sb.append(" xmlns:d=\"http://schemas.microsoft.com/ado/2007/08/dataservices\"");
+		sb.append(" xmlns:m=\"http://schemas.microsoft.com/ado/2007/08/dataservices/metadata\"");
+		sb.append(" xmlns=\"http://www.w3.org/2005/Atom\"><title type=\"text\" />");
+		for (SingleResult sr : results) {
+			sb.append("<entry><title type=\"text\">WebResult</title><content type=\"application/xml\"><m:properties>");
+			sb.append("<d:Title m:type=\"Edm.String\">").append(escape(sr.getTitle())).append("</d:Title>");
+			sb.append("<d:Description m:type=\"Edm.String\">").append(escape(sr.getSummary()))
+					.append("</d:Description>");
+			sb.append("<d:DisplayUrl m:type=\"Edm.String\">").append(escape(sr.getUrl())).append("</d:DisplayUrl>");
+			sb.append("<d:Url m:type=\"Edm.String\">").append(escape(sr.getUrl())).append("</d:Url>");
+			sb.append("</m:properties></content></entry>");
+		}
+		sb.append("</feed>");
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String escape(String text) {
+		return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+	}
+}
@@ -0,0 +1,98 @@
+package adb;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Class AtomParser: Streaming parser of the Bing Atom feed.
+ * Reads the feed once with a StAX pull parser and hands out every SingleResult as soon as
+ * its entry ends, instead of building the whole DOM like QueryCLI.parseXml.
+ * The factory is shared, every parse creates only a reader. Thread safe.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public class AtomParser {
+	private static final XMLInputFactory FACTORY = newFactory();
+
+	private static XMLInputFactory newFactory() {
+		// the parser of the JDK, without looking for another one through the classpath
+		XMLInputFactory factory = XMLInputFactory.newDefaultFactory();
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		return factory;
+	}
+
+	/**
+	 * @param xmlStream Xml stream of the result from Bing.
+	 * @return List of SingleResult in the order of the feed.
+	 * @throws XMLStreamException
+	 */
+	public static List<SingleResult> parse(InputStream xmlStream) throws XMLStreamException {
+		List<SingleResult> results = new ArrayList<>();
+		parse(xmlStream, results::add);
+		return results;
+	}
+
+	/**
+	 * Parse the feed and emit every result when its entry is read.
+	 *
+	 * @param xmlStream Xml stream of the result from Bing, not closed.
+	 * @param consumer receives the results in the order of the feed.
+	 * @throws XMLStreamException
+	 */
+	public static void parse(InputStream xmlStream, Consumer<SingleResult> consumer) throws XMLStreamException {
+		XMLStreamReader reader = FACTORY.createXMLStreamReader(xmlStream);
+		try {
+			// inside entry, content and m:properties, only fields of m:properties are read
+			boolean inEntry = false, inContent = false, inProperties = false;
+			String url = null, title = null, description = null;
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					String name = reader.getLocalName();
+					if (!inEntry) {
+						if (name.equals("entry")) {
+							inEntry = true;
+							url = title = description = null;
+						}
+					} else if (!inContent) {
+						inContent = name.equals("content");
+					} else if (!inProperties) {
+						inProperties = name.equals("properties");
+					} else if (name.equals("Url") && url == null) {
+						url = reader.getElementText();
+					} else if (name.equals("Title") && title == null) {
+						title = reader.getElementText();
+					} else if (name.equals("Description") && description == null) {
+						description = reader.getElementText();
+					}
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					String name = reader.getLocalName();
+					if (inProperties && name.equals("properties")) {
+						inProperties = false;
+					} else if (inContent && !inProperties && name.equals("content")) {
+						inContent = false;
+					} else if (inEntry && !inContent && name.equals("entry")) {
+						inEntry = false;
+						consumer.accept(new SingleResult(orEmpty(url), orEmpty(title), orEmpty(description)));
+					}
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static String orEmpty(String text) {
+		return text == null ? "" : text;
+	}
+}
@@ -0,0 +1,235 @@
+package adb;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Class BatchExpansion: Expand many independent queries at once for offline evaluation.
+ * Every job is a query with its judged documents and gets its own RelevanceFeedback, so jobs
+ * share nothing but the stop words and run concurrently. Results come back as ExpansionResult
+ * in the order of the jobs, nothing is printed, and the report gives the throughput of the batch.
+ * A job that fails is reported with its exception, the other jobs go on.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public class BatchExpansion {
+
+	/**
+	 * Class Job: A query and the documents judged for it.
+	 */
+	public static class Job {
+		private final String query;
+		private final List<SingleResult> documents;
+
+		/**
+		 * @param query keywords of the query.
+		 * @param documents results of the query with relevance.
+		 */
+		public Job(String query, List<SingleResult> documents) {
+			this.query = query;
+			this.documents = documents;
+		}
+
+		public String getQuery() {
+			return query;
+		}
+
+		public List<SingleResult> getDocuments() {
+			return documents;
+		}
+	}
+
+	/**
+	 * Class Report: Results of a batch in the order of the jobs and how fast it ran.
+	 */
+	public static class Report {
+		private final List<ExpansionResult> results; // null for a failed job
+		private final List<Throwable> errors; // null for a job that succeeded
+		private final int documents;
+		private final long nanos;
+
+		Report(List<ExpansionResult> results, List<Throwable> errors, int documents, long nanos) {
+			this.results = Collections.unmodifiableList(results);
+			this.errors = Collections.unmodifiableList(errors);
+			this.documents = documents;
+			this.nanos = nanos;
+		}
+
+		/**
+		 * @return expansion of every job, null where the job failed.
+		 */
+		public List<ExpansionResult> getResults() {
+			return results;
+		}
+
+		/**
+		 * @return exception of every job, null where the job succeeded.
+		 */
+		public List<Throwable> getErrors() {
+			return errors;
+		}
+
+		public int getFailed() {
+			int failed = 0;
+			for (Throwable error : errors) {
+				if (error != null)
+					failed++;
+			}
+			return failed;
+		}
+
+		public long getElapsedNanos() {
+			return nanos;
+		}
+
+		public double getJobsPerSecond() {
+			return results.size() / (nanos / 1e9);
+		}
+
+		public double getDocumentsPerSecond() {
+			return documents / (nanos / 1e9);
+		}
+	}
+
+	private final StopWords stop; // shared by every job
+	private final int threads;
+	private int badWords = 1; // words added after bad feedback, see README - bad/good feedback
+	private int goodWords = 2; // words added after good feedback
+	private RelevanceFeedback.TieBreak tieBreak = RelevanceFeedback.TieBreak.FIRST_SEEN;
+	private TermWeighting weighting = TermWeighting.LOG_TF_IDF;
+	private double[] rocchio = { RelevanceFeedback.ALPHA, RelevanceFeedback.BETA, RelevanceFeedback.GAMMA };
+
+	/**
+	 * @param threads number of jobs running at once.
+	 */
+	public BatchExpansion(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("threads = " + threads);
+		stop = StopWords.shared();
+		this.threads = threads;
+	}
+
+	/**
+	 * How many words a job adds to its query, 1 and 2 by default like FeedbackSession.
+	 *
+	 * @param badWords words added when precision is at most 0.5.
+	 * @param goodWords words added when precision is over 0.5.
+	 * @param tieBreak which word is taken first when words have the same weight.
+	 */
+	public void setExpansion(int badWords, int goodWords, RelevanceFeedback.TieBreak tieBreak) {
+		this.badWords = badWords;
+		this.goodWords = goodWords;
+		this.tieBreak = tieBreak;
+	}
+
+	/**
+	 * @param weighting tf and idf of the words, see RelevanceFeedback.setWeighting.
+	 * @param alpha weight of the query in qm.
+	 * @param beta weight of the relevant centroid.
+	 * @param gamma weight of the non-relevant centroid.
+	 */
+	public void setWeighting(TermWeighting weighting, double alpha, double beta, double gamma) {
+		this.weighting = weighting;
+		rocchio = new double[] { alpha, beta, gamma };
+	}
+
+	/**
+	 * Expand every job and wait for all of them.
+	 *
+	 * @param jobs queries with judged documents.
+	 * @return results in the order of the jobs.
+	 * @throws InterruptedException
+	 */
+	public Report run(List<Job> jobs) throws InterruptedException {
+		List<Callable<ExpansionResult>> tasks = new ArrayList<>();
+		int documents = 0;
+		for (Job job : jobs) {
+			tasks.add(() -> expand(job));
+			documents += job.getDocuments().size();
+		}
+		List<ExpansionResult> results = new ArrayList<>();
+		List<Throwable> errors = new ArrayList<>();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		long start = System.nanoTime();
+		try {
+			for (Future<ExpansionResult> future : executor.invokeAll(tasks)) {
+				try {
+					results.add(future.get());
+					errors.add(null);
+				} catch (ExecutionException ex) {
+					results.add(null);
+					errors.add(ex.getCause());
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return new Report(results, errors, documents, System.nanoTime() - start);
+	}
+
+	private ExpansionResult expand(Job job) {
+		RelevanceFeedback feedback = new RelevanceFeedback(stop);
+		feedback.setVerbose(false);
+		feedback.setTieBreak(tieBreak);
+		feedback.setWeighting(weighting);
+		feedback.setRocchio(rocchio[0], rocchio[1], rocchio[2]);
+		int relevant = 0;
+		for (SingleResult sr : job.getDocuments()) {
+			if (sr.getIsRelevant())
+				relevant++;
+		}
+		double precision = job.getDocuments().isEmpty() ? 0 : (double) relevant / job.getDocuments().size();
+		int number = precision <= 0.5 ? badWords : goodWords;
+		return feedback.expansion(number, job.getDocuments(), job.getQuery().split(" "));
+	}
+
+	/**
+	 * Expand every recorded round of a transcript as a job, to measure the throughput.
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("Usage: BatchExpansion <transcript> [threads] [repeat]");
+			System.exit(1);
+		}
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+		int repeat = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+		List<Job> jobs = new ArrayList<>();
+		for (List<Transcript.Round> rounds : Transcript.read(Paths.get(args[0]))) {
+			for (Transcript.Round round : rounds) {
+				if (!round.getResults().isEmpty())
+					jobs.add(new Job(round.getQuery(), round.getResults()));
+			}
+		}
+		List<Job> batch = new ArrayList<>();
+		for (int i = 0; i < repeat; i++) {
+			batch.addAll(jobs);
+		}
+		BatchExpansion expansion = new BatchExpansion(threads);
+		// same properties as QueryCLI, to tune the weighting offline
+		double[] rocchio;
+		try {
+			rocchio = QueryCLI.rocchio();
+		} catch (IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			System.exit(1);
+			return;
+		}
+		expansion.setWeighting(TermWeighting.parse(System.getProperty(QueryCLI.WEIGHTING, "log")), rocchio[0],
+				rocchio[1], rocchio[2]);
+		Report report = expansion.run(batch);
+
+		System.out.printf("Jobs        = %d (%d failed)%n", batch.size(), report.getFailed());
+		System.out.printf("Elapsed     = %.3f s%n", report.getElapsedNanos() / 1e9);
+		System.out.printf("Throughput  = %.1f jobs/s, %.1f documents/s%n", report.getJobsPerSecond(),
+				report.getDocumentsPerSecond());
+		if (Metrics.isEnabled())
+			System.out.print(Metrics.get().summary());
+	}
+}
@@ -0,0 +1,199 @@
+package adb;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * Class BingSearchBackend: Top results from the Bing search API in Atom format, in pages of
+ * PAGE_SIZE. A search takes setPages pages, one by default: every page is a request of its own
+ * with its $skip offset, all of them sent at once, read in order and stopped after a short page.
+ * The endpoint can be changed to a StandInServer for tests.
+ * Requests go through a java.net.http.HttpClient, which keeps connections alive between
+ * rounds, speaks HTTP/2 where the server does, and can be shared by many backends.
+ * Responses are asked gzipped, every request has a timeout and is retried with backoff
+ * on io errors and 5xx.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public class BingSearchBackend implements SearchBackend {
+	public static final String BING_URL = "https://api.datamarket.azure.com/Bing/Search/Web";
+	public static final int PAGE_SIZE = 10; // $top of one request
+	private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+
+	private final String authorization; // Basic header, encoded once
+	private final String endpoint;
+	private final HttpClient client;
+	private boolean verbose; // print the url of every search
+	private Duration timeout = Duration.ofSeconds(10); // of one request until its response starts
+	private int retries = 2; // tries after the first one
+	private long backoffMillis = 100; // wait before the first retry, doubled every retry
+	private int pages = 1; // pages of PAGE_SIZE results per search
+
+	/**
+	 * @param accountKey Bing account key needed for the search.
+	 */
+	public BingSearchBackend(String accountKey) {
+		this(accountKey, BING_URL);
+	}
+
+	/**
+	 * @param accountKey Bing account key needed for the search.
+	 * @param endpoint url of the search, without the query part.
+	 */
+	public BingSearchBackend(String accountKey, String endpoint) {
+		this(accountKey, endpoint, newClient(CONNECT_TIMEOUT));
+	}
+
+	/**
+	 * @param accountKey Bing account key needed for the search.
+	 * @param endpoint url of the search, without the query part.
+	 * @param client client to send requests with, its connections are shared by every backend using it.
+	 */
+	public BingSearchBackend(String accountKey, String endpoint, HttpClient client) {
+		byte[] accountKeyBytes = Base64.encodeBase64((accountKey + ":" + accountKey).getBytes());
+		this.authorization = "Basic " + new String(accountKeyBytes);
+		this.endpoint = endpoint;
+		this.client = client;
+	}
+
+	/**
+	 * @param connectTimeout time to open a connection.
+	 * @return client that prefers HTTP/2 and follows redirects.
+	 */
+	public static HttpClient newClient(Duration connectTimeout) {
+		return HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).connectTimeout(connectTimeout)
+				.followRedirects(HttpClient.Redirect.NORMAL).build();
+	}
+
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+
+	/**
+	 * @param timeout time for one request until its response starts.
+	 * @param retries tries after the first one on io errors and 5xx.
+	 * @param backoffMillis wait before the first retry, doubled for every next one.
+	 */
+	public void setRetry(Duration timeout, int retries, long backoffMillis) {
+		this.timeout = timeout;
+		this.retries = retries;
+		this.backoffMillis = backoffMillis;
+	}
+
+	/**
+	 * @param pages pages of PAGE_SIZE results per search, fetched concurrently.
+	 */
+	public void setPages(int pages) {
+		if (pages < 1)
+			throw new IllegalArgumentException("pages = " + pages);
+		this.pages = pages;
+	}
+
+	@Override
+	public List<SingleResult> search(String query) throws Exception {
+		long start = Metrics.start(), allocated = Metrics.allocated();
+		List<CompletableFuture<HttpResponse<InputStream>>> responses = new ArrayList<>();
+		for (int page = 0; page < pages; page++) {
+			responses.add(send(request(query, page * PAGE_SIZE), 0));
+		}
+		List<SingleResult> results = new ArrayList<>();
+		try {
+			for (int page = 0; page < pages; page++) {
+				HttpResponse<InputStream> response = get(responses.get(page));
+				if (page == 0)
+					Metrics.stop(Metrics.Stage.FETCH, start, allocated);
+				long parseStart = Metrics.start(), parseAllocated = Metrics.allocated();
+				List<SingleResult> pageResults;
+				try (InputStream body = body(response)) {
+					pageResults = AtomParser.parse(body);
+				}
+				Metrics.stop(Metrics.Stage.PARSE, parseStart, parseAllocated);
+				results.addAll(pageResults);
+				if (pageResults.size() < PAGE_SIZE)
+					break; // no results after a short page
+			}
+		} finally {
+			// bodies of pages not read are closed, so their connections can be used again
+			for (CompletableFuture<HttpResponse<InputStream>> response : responses) {
+				response.thenAccept(r -> close(r.body()));
+			}
+		}
+		return results;
+	}
+
+	private HttpRequest request(String query, int skip) {
+		String bingUrl = endpoint + "?Query=%27" + URLEncoder.encode(query, StandardCharsets.UTF_8) + "%27&$top="
+				+ PAGE_SIZE + (skip > 0 ? "&$skip=" + skip : "") + "&$format=Atom";
+		if (verbose)
+			System.out.println("URL: " + bingUrl);
+		return HttpRequest.newBuilder(URI.create(bingUrl)).timeout(timeout).header("Authorization", authorization)
+				.header("Accept-Encoding", "gzip").GET().build();
+	}
+
+	/**
+	 * Send a request, on io errors and 5xx send it again after a backoff until retries run out.
+	 */
+	private CompletableFuture<HttpResponse<InputStream>> send(HttpRequest request, int attempt) {
+		return client.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream()).handle((response, error) -> {
+			if (error == null && response.statusCode() < 500)
+				return CompletableFuture.completedFuture(response);
+			if (response != null)
+				close(response.body());
+			if (attempt >= retries) {
+				return CompletableFuture.<HttpResponse<InputStream>>failedFuture(error != null ? error
+						: new IOException("HTTP " + response.statusCode() + " from " + request.uri()));
+			}
+			return CompletableFuture
+					.runAsync(() -> {
+					}, CompletableFuture.delayedExecutor(backoffMillis << attempt, TimeUnit.MILLISECONDS))
+					.thenCompose(ignored -> send(request, attempt + 1));
+		}).thenCompose(future -> future);
+	}
+
+	private static HttpResponse<InputStream> get(CompletableFuture<HttpResponse<InputStream>> future)
+			throws Exception {
+		try {
+			return future.get();
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof Exception)
+				throw (Exception) ex.getCause();
+			throw ex;
+		}
+	}
+
+	/**
+	 * @return the body of a successful response, unzipped.
+	 */
+	private static InputStream body(HttpResponse<InputStream> response) throws IOException {
+		if (response.statusCode() != 200) {
+			close(response.body());
+			throw new IOException("HTTP " + response.statusCode() + " from " + response.uri());
+		}
+		boolean gzip = response.headers().firstValue("Content-Encoding").map(e -> e.equalsIgnoreCase("gzip"))
+				.orElse(false);
+		return gzip ? new GZIPInputStream(response.body()) : response.body();
+	}
+
+	private static void close(InputStream body) {
+		try {
+			body.close();
+		} catch (IOException ex) {
+			// nothing more to read from it anyway
+		}
+	}
+}
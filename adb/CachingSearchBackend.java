@@ -0,0 +1,46 @@
+package adb;
+
+import java.util.List;
+
+/**
+ * Class CachingSearchBackend: Serve the results of a query searched before from the ResultCache,
+ * so a warm session skips the network and the xml parsing. Other queries, and queries cached
+ * with fewer results than a round judges, go to the backend and their results are cached.
+ * Thread safe if the backend is.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public class CachingSearchBackend implements SearchBackend {
+	private final SearchBackend backend;
+	private final ResultCache cache;
+	private final int resultsPerRound;
+
+	/**
+	 * @param backend where the results of new queries come from.
+	 * @param cache results of queries searched before.
+	 */
+	public CachingSearchBackend(SearchBackend backend, ResultCache cache) {
+		this(backend, cache, FeedbackSession.TOP_QUERIES);
+	}
+
+	/**
+	 * @param backend where the results of new queries come from.
+	 * @param cache results of queries searched before.
+	 * @param resultsPerRound results judged in a round, a cached query with fewer is searched again.
+	 */
+	public CachingSearchBackend(SearchBackend backend, ResultCache cache, int resultsPerRound) {
+		this.backend = backend;
+		this.cache = cache;
+		this.resultsPerRound = resultsPerRound;
+	}
+
+	@Override
+	public List<SingleResult> search(String query) throws Exception {
+		List<SingleResult> results = cache.getResults(query, resultsPerRound);
+		if (results == null) {
+			results = backend.search(query);
+			cache.putResults(query, results);
+		}
+		return results;
+	}
+}
@@ -0,0 +1,21 @@
+package adb;
+
+import java.io.IOException;
+import java.util.Scanner;
+
+/**
+ * Class ConsoleJudge: Display every result and ask the user for relevance on the CLI.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public class ConsoleJudge implements RelevanceJudge {
+	private final static Scanner SCANNER = new Scanner(System.in);
+
+	@Override
+	public boolean isRelevant(int currentResult, SingleResult singleResult) throws IOException {
+		System.out.println("Result " + currentResult);
+		System.out.println(singleResult);
+		System.out.print("Relevant (Y/N)? ");
+		return SCANNER.next().equalsIgnoreCase("Y");
+	}
+}
@@ -0,0 +1,113 @@
+package adb;
+
+/**
+ * Class DenseKernels: Loops over dense vectors by term index, used by the dense path of Rocchio.
+ * SCALAR is plain java, best() gives VectorKernels, built on the incubator Vector API, when
+ * the jdk.incubator.vector module is loaded (java --add-modules jdk.incubator.vector) and
+ * -Dadb.simd is not false, SCALAR otherwise. Every implementation rounds every element the
+ * same way as SCALAR, no fused multiply add, so they give the same bits.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public interface DenseKernels {
+	/** system property, false to use SCALAR even when the Vector API is there. */
+	String SIMD = "adb.simd";
+
+	/** plain loops. */
+	DenseKernels SCALAR = new DenseKernels() {
+		@Override
+		public void centroid(double[] sum, double[] idf, double num, double[] out, int n) {
+			for (int i = 0; i < n; i++) {
+				out[i] = sum[i] * idf[i] / num;
+			}
+		}
+
+		@Override
+		public void vectorMulConst(double[] v, double c, int n) {
+			for (int i = 0; i < n; i++) {
+				v[i] *= c;
+			}
+		}
+
+		@Override
+		public void combine(double[] q, double[] dr, double[] dnr, double[] out, int n) {
+			for (int i = 0; i < n; i++) {
+				double w = q[i] + (dr[i] - dnr[i]);
+				out[i] = w > 0 ? w : 0;
+			}
+		}
+
+		@Override
+		public void rocchio(double[] q, double[] drSum, double drNum, double beta, double[] dnrSum, double dnrNum,
+				double gamma, double[] idf, double[] out, int n) {
+			for (int i = 0; i < n; i++) {
+				double w = q[i] + (drSum[i] * idf[i] / drNum * beta - dnrSum[i] * idf[i] / dnrNum * gamma);
+				out[i] = w > 0 ? w : 0;
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "scalar";
+		}
+	};
+
+	/**
+	 * out[i] = sum[i] * idf[i] / num.
+	 *
+	 * @param sum tf weights of a group summed by term index.
+	 * @param idf idf by term index.
+	 * @param num documents of the group.
+	 * @param out centroid of the group, may be sum.
+	 * @param n terms to compute.
+	 */
+	void centroid(double[] sum, double[] idf, double num, double[] out, int n);
+
+	/**
+	 * v[i] *= c.
+	 */
+	void vectorMulConst(double[] v, double c, int n);
+
+	/**
+	 * out[i] = q[i] + (dr[i] - dnr[i]), 0 where that is not positive.
+	 *
+	 * @param q query, scaled by alpha.
+	 * @param dr centroid of the relevant documents, scaled by beta.
+	 * @param dnr centroid of the non-relevant documents, scaled by gamma.
+	 * @param out qm, may be any of the others.
+	 * @param n terms to compute.
+	 */
+	void combine(double[] q, double[] dr, double[] dnr, double[] out, int n);
+
+	/**
+	 * centroid, vectorMulConst and combine of both groups in one pass, with the same rounding:
+	 * out[i] = q[i] + (drSum[i] * idf[i] / drNum * beta - dnrSum[i] * idf[i] / dnrNum * gamma),
+	 * 0 where that is not positive.
+	 *
+	 * @param q query, scaled by alpha.
+	 * @param drSum tf weights of the relevant documents summed by term index.
+	 * @param drNum relevant documents, not 0.
+	 * @param dnrSum tf weights of the non-relevant documents summed by term index.
+	 * @param dnrNum non-relevant documents, not 0.
+	 * @param idf idf by term index.
+	 * @param out qm, may be q.
+	 * @param n terms to compute.
+	 */
+	void rocchio(double[] q, double[] drSum, double drNum, double beta, double[] dnrSum, double dnrNum, double gamma,
+			double[] idf, double[] out, int n);
+
+	/**
+	 * @return VectorKernels if the Vector API can be used, SCALAR if not.
+	 */
+	static DenseKernels best() {
+		if (!Boolean.parseBoolean(System.getProperty(SIMD, "true"))
+				|| ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty())
+			return SCALAR;
+		try {
+			// by name, so nothing else needs the module to compile or load
+			return (DenseKernels) Class.forName("adb.VectorKernels").getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError ex) {
+			return SCALAR;
+		}
+	}
+}
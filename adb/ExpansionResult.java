@@ -0,0 +1,59 @@
+package adb;
+
+/**
+ * Class ExpansionResult: One round of query expansion as data, the terms of the new query in
+ * order with their penalized weights, the words added and the penalty they were given.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public class ExpansionResult {
+	private final String[] terms; // terms of the new query, biggest weight first
+	private final double[] weights; // penalized weight of terms[i]
+	private final String[] added; // words that were not in the query, best first
+	private final double penalty; // penalty factor of the added words
+	private final double precision; // precision of the round
+
+	ExpansionResult(String[] terms, double[] weights, String[] added, double penalty, double precision) {
+		this.terms = terms;
+		this.weights = weights;
+		this.added = added;
+		this.penalty = penalty;
+		this.precision = precision;
+	}
+
+	public String[] getTerms() {
+		return terms.clone();
+	}
+
+	public double[] getWeights() {
+		return weights.clone();
+	}
+
+	public String[] getAdded() {
+		return added.clone();
+	}
+
+	public double getPenalty() {
+		return penalty;
+	}
+
+	public double getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * @return the new query, every term followed by a space.
+	 */
+	public String getQuery() {
+		StringBuilder next = new StringBuilder();
+		for (String term : terms) {
+			next.append(term).append(' ');
+		}
+		return next.toString();
+	}
+
+	@Override
+	public String toString() {
+		return getQuery().trim();
+	}
+}
@@ -0,0 +1,352 @@
+package adb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Class FeedbackSession: The search and feedback loop of one user, until the desired precision.
+ * Results come from a SearchBackend and relevance from a RelevanceJudge, so the same loop
+ * runs on the CLI with Bing or headless on recorded transcripts.
+ * Every judgment goes to the feedback as soon as it is given, so a round of 50 or 100 results
+ * does not wait for all of them to be tokenized after the last one.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public class FeedbackSession {
+	public static final int TOP_QUERIES = 10; // results judged in a round by default
+
+	private final SearchBackend backend;
+	private final RelevanceJudge judge;
+	private final float targetPrecision;
+	private int resultsPerRound = TOP_QUERIES; // k of precision@k
+	private TranscriptWriter transcript; // log of the rounds, null for no log
+	private boolean verbose; // print the loop to screen
+	private String clientKey = ""; // shown on screen only
+	private int maxRounds; // give up after this many rounds, 0 for no limit
+	private Prefetcher prefetcher; // fetches guessed next queries while judging, null for none
+	private ResultCache cache; // judgments and words of earlier sessions, null for none
+	private String need; // judgments are kept for it, null for the first query
+	private TermStatsStore termStats; // df over all sessions, null for this session only
+	private int maxDocs; // history limits of the feedback, 0 for no limit
+	private int maxTerms;
+	private RelevanceFeedback.Eviction eviction = RelevanceFeedback.Eviction.AGE;
+	private int badWords = 1; // words added after bad feedback, see README - bad/good feedback
+	private int goodWords = 2; // words added after good feedback
+	private RelevanceFeedback.TieBreak tieBreak = RelevanceFeedback.TieBreak.FIRST_SEEN;
+	private TermWeighting weighting = TermWeighting.LOG_TF_IDF;
+	private double[] rocchio = { RelevanceFeedback.ALPHA, RelevanceFeedback.BETA, RelevanceFeedback.GAMMA };
+	private int round; // the current round of query
+	private float currentPrecision;
+
+	/**
+	 * @param backend where the results come from.
+	 * @param judge who decides relevance.
+	 * @param targetPrecision stop when precision of a round reaches it.
+	 */
+	public FeedbackSession(SearchBackend backend, RelevanceJudge judge, float targetPrecision) {
+		this.backend = backend;
+		this.judge = judge;
+		this.targetPrecision = targetPrecision;
+	}
+
+	/**
+	 * @param transcript log of the rounds, every judged round is appended to it.
+	 */
+	public void setTranscript(TranscriptWriter transcript) {
+		this.transcript = transcript;
+	}
+
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+
+	public void setClientKey(String clientKey) {
+		this.clientKey = clientKey;
+	}
+
+	public void setMaxRounds(int maxRounds) {
+		this.maxRounds = maxRounds;
+	}
+
+	/**
+	 * @param resultsPerRound results judged in a round, the backend has to give at least as many,
+	 *            e.g. a BingSearchBackend with enough pages.
+	 */
+	public void setResultsPerRound(int resultsPerRound) {
+		if (resultsPerRound < 1)
+			throw new IllegalArgumentException("resultsPerRound = " + resultsPerRound);
+		this.resultsPerRound = resultsPerRound;
+	}
+
+	/**
+	 * Fetch the next round in the background while the current one is judged.
+	 * After every judgment the next query is expanded on a copy of the feedback,
+	 * guessing the results not judged yet, and the results of the guesses are prefetched.
+	 * 
+	 * @param prefetcher prefetcher on the same backend, null to search only when asked.
+	 */
+	public void setPrefetcher(Prefetcher prefetcher) {
+		this.prefetcher = prefetcher;
+	}
+
+	/**
+	 * Reuse the judgments and the words of documents from earlier sessions. A result judged
+	 * before for the same first query is not asked again. Results are cached by the backend,
+	 * see CachingSearchBackend.
+	 * 
+	 * @param cache cache shared by the sessions, null for none.
+	 */
+	public void setCache(ResultCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * @param need name of the information need the judgments are kept for, null for the first query.
+	 */
+	public void setNeed(String need) {
+		this.need = need;
+	}
+
+	/**
+	 * Use the df of earlier sessions for idf, and add the documents of this session at its end
+	 * if the store can be written.
+	 * 
+	 * @param termStats term stats shared by the sessions, null for this session only.
+	 */
+	public void setTermStats(TermStatsStore termStats) {
+		this.termStats = termStats;
+	}
+
+	/**
+	 * Bound the history of the feedback, see RelevanceFeedback.setHistoryLimit.
+	 */
+	public void setHistoryLimit(int maxDocs, int maxTerms, RelevanceFeedback.Eviction eviction) {
+		this.maxDocs = maxDocs;
+		this.maxTerms = maxTerms;
+		this.eviction = eviction;
+	}
+
+	/**
+	 * How many words a round adds to the query, 1 and 2 by default.
+	 * 
+	 * @param badWords words added when precision is at most 0.5.
+	 * @param goodWords words added when precision is over 0.5.
+	 * @param tieBreak which word is taken first when words have the same weight.
+	 */
+	public void setExpansion(int badWords, int goodWords, RelevanceFeedback.TieBreak tieBreak) {
+		this.badWords = badWords;
+		this.goodWords = goodWords;
+		this.tieBreak = tieBreak;
+	}
+
+	/**
+	 * @param weighting tf and idf of the words, see RelevanceFeedback.setWeighting.
+	 * @param alpha weight of the query in qm.
+	 * @param beta weight of the relevant centroid.
+	 * @param gamma weight of the non-relevant centroid.
+	 */
+	public void setWeighting(TermWeighting weighting, double alpha, double beta, double gamma) {
+		this.weighting = weighting;
+		rocchio = new double[] { alpha, beta, gamma };
+	}
+
+	public int getRound() {
+		return round;
+	}
+
+	public float getCurrentPrecision() {
+		return currentPrecision;
+	}
+
+	/**
+	 * @param results results in the order shown, the first judged ones have their relevance set.
+	 * @param judged results judged so far.
+	 * @param k depth of the precision.
+	 * @return relevant results among the first k judged, over the number of them.
+	 */
+	public static float precisionAt(List<SingleResult> results, int judged, int k) {
+		int n = Math.min(judged, k);
+		if (n == 0)
+			return 0;
+		int relevant = 0;
+		for (int i = 0; i < n; i++) {
+			if (results.get(i).getIsRelevant())
+				relevant++;
+		}
+		return (float) relevant / n;
+	}
+
+	/**
+	 * Run the loop from the first query.
+	 * 
+	 * @param searchKeyword keywords of the first query.
+	 * @return 0 if the desired precision is reached, 1 if the loop can not go on or reaches max rounds.
+	 * @throws Exception
+	 */
+	public int run(String searchKeyword) throws Exception {
+		// Since our relevance feedback is accumulated.
+		RelevanceFeedback feedback = new RelevanceFeedback();
+		feedback.setVerbose(verbose);
+		feedback.setCache(cache);
+		feedback.setTermStats(termStats);
+		feedback.setHistoryLimit(maxDocs, maxTerms, eviction);
+		feedback.setTieBreak(tieBreak);
+		feedback.setWeighting(weighting);
+		feedback.setRocchio(rocchio[0], rocchio[1], rocchio[2]);
+		try {
+			return loop(feedback, searchKeyword);
+		} finally {
+			if (prefetcher != null)
+				prefetcher.discard();
+			feedback.recordTermStats();
+		}
+	}
+
+	private int loop(RelevanceFeedback feedback, String searchKeyword) throws Exception {
+		String need = this.need != null ? this.need : searchKeyword;
+		round = 0;
+		currentPrecision = 0;
+
+		while (currentPrecision < targetPrecision) {
+			if (maxRounds > 0 && round == maxRounds)
+				return 1;
+			++round;
+			// print to screen about the query.
+			print("Parameters:");
+			print("Client key  = " + clientKey);
+			print("Query       = " + searchKeyword);
+			print("Precision   = " + targetPrecision);
+			long start = Metrics.start(), allocated = Metrics.allocated();
+			List<SingleResult> currentSearchResult = prefetcher != null ? prefetcher.search(searchKeyword)
+					: backend.search(searchKeyword);
+			Metrics.stop(Metrics.Stage.SEARCH, start, allocated);
+			print("Total no of results : " + currentSearchResult.size());
+			int totalRelevant = 0, currentResultOrder = 0;
+			List<SingleResult> relevantResult = new ArrayList<>();
+
+			// We do not handle scenarios when results are less than resultsPerRound.
+			if (currentSearchResult.size() < resultsPerRound) {
+				log(searchKeyword, Collections.emptyList(), Float.NaN);
+				if (verbose)
+					System.err.println("[ERROR] Total available search results are less than " + resultsPerRound
+							+ ", cannot proceed.");
+				return 1;
+			}
+			if (currentSearchResult.size() > resultsPerRound)
+				currentSearchResult = currentSearchResult.subList(0, resultsPerRound);
+
+			// the feedback does not change while judging, guesses copy this one
+			RelevanceFeedback snapshot = prefetcher != null ? feedback.copy() : null;
+			print("Bing Search Results:\n======================");
+			for (SingleResult singleResult : currentSearchResult) {
+				singleResult.setIsRelevant(judge(need, ++currentResultOrder, singleResult));
+				relevantResult.add(singleResult);
+				if (singleResult.getIsRelevant()) {
+					totalRelevant++; // Count for total relevance so as to calculate the precision.
+				}
+				// tokenized while the next result is judged
+				feedback.addJudgment(singleResult);
+				if (snapshot != null && totalRelevant != 0)
+					speculate(snapshot, currentSearchResult, currentResultOrder, totalRelevant, searchKeyword);
+			}
+			currentPrecision = precisionAt(relevantResult, currentResultOrder, resultsPerRound);
+			Metrics.round(round, currentPrecision);
+			log(searchKeyword, relevantResult, currentPrecision);
+			print("======================\nFEEDBACK SUMMARY");
+			print("Query " + searchKeyword);
+			print("Precision " + currentPrecision);
+			if (currentPrecision < targetPrecision && totalRelevant != 0) {
+				print("Still below the desired precision of " + targetPrecision);
+				String newKeywords;
+				// Decide how many more terms we need in the new query.
+				// See README - bad/good feedback
+				newKeywords = feedback.queryExpansion(words(currentPrecision), searchKeyword.split(" "));
+				Metrics.history(feedback.getTerms().size(), feedback.getVocabulary());
+				print("Augmented query: " + newKeywords);
+				print("======================");
+				searchKeyword = newKeywords;
+			} else if (totalRelevant == 0) {
+				print("Below desired precision, but can no longer augment the query.");
+				return 1;
+			}
+		}
+
+		feedback.recordTermStats();
+		feedback.allClear();
+		print("Desired precision reached, done");
+		return 0;
+	}
+
+	/**
+	 * Relevance given before for the same need, otherwise ask the judge.
+	 */
+	private boolean judge(String need, int currentResult, SingleResult singleResult) throws Exception {
+		if (cache == null)
+			return judge.isRelevant(currentResult, singleResult);
+		Boolean relevant = cache.getJudgment(need, singleResult.getUrl());
+		if (relevant != null) {
+			print("Result " + currentResult);
+			print(singleResult.toString());
+			print("Relevant (judged before): " + (relevant ? "Y" : "N"));
+			return relevant;
+		}
+		relevant = judge.isRelevant(currentResult, singleResult);
+		cache.putJudgment(need, singleResult.getUrl(), relevant);
+		return relevant;
+	}
+
+	/**
+	 * Guess the next query twice, as if the results not judged yet were all non-relevant
+	 * and as if they were all relevant, so the right guess is in flight one judgment early.
+	 */
+	private void speculate(RelevanceFeedback snapshot, List<SingleResult> results, int judged, int totalRelevant,
+			String searchKeyword) {
+		int unjudged = results.size() - judged;
+		prefetcher.speculate(guess(snapshot, results, judged, totalRelevant, false, searchKeyword),
+				guess(snapshot, results, judged, totalRelevant + unjudged, true, searchKeyword));
+	}
+
+	private Callable<String> guess(RelevanceFeedback snapshot, List<SingleResult> results, int judged,
+			int totalRelevant, boolean rest, String searchKeyword) {
+		float precision = (float) totalRelevant / results.size();
+		if (precision >= targetPrecision)
+			return () -> null; // no next round
+		// the judge keeps setting relevance, so the guess works on copies
+		List<SingleResult> documents = new ArrayList<>();
+		for (int i = 0; i < results.size(); i++) {
+			SingleResult sr = results.get(i);
+			SingleResult copy = new SingleResult(sr.getUrl(), sr.getTitle(), sr.getSummary());
+			copy.setIsRelevant(i < judged ? sr.getIsRelevant() : rest);
+			documents.add(copy);
+		}
+		int number = words(precision);
+		return () -> snapshot.copy().queryExpansion(number, documents, searchKeyword.split(" "));
+	}
+
+	private int words(float precision) {
+		return precision <= 0.5 ? badWords : goodWords;
+	}
+
+	/**
+	 * Queue the round for the transcript, with copies of the results as they were judged.
+	 */
+	private void log(String query, List<SingleResult> results, float precision) throws IOException {
+		if (transcript == null)
+			return;
+		Transcript.Round record = new Transcript.Round(round, query, precision);
+		for (SingleResult sr : results) {
+			SingleResult copy = new SingleResult(sr.getUrl(), sr.getTitle(), sr.getSummary());
+			copy.setIsRelevant(sr.getIsRelevant());
+			record.getResults().add(copy);
+		}
+		transcript.append(record);
+	}
+
+	private void print(String line) {
+		if (verbose)
+			System.out.println(line);
+	}
+}
@@ -0,0 +1,305 @@
+package adb;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Class InvertedIndex: Postings of the accumulated documents by term id, to score them
+ * against a query vector without going through every document.
+ * A posting list is a byte array of varint pairs, the gap to the doc id before and the tf,
+ * so a document costs two or three bytes per word, and the length of every document is kept
+ * for the weighting. Removed documents are skipped, and once they are more than the live
+ * ones they are dropped from the lists and the live documents get new doc ids from 0 in the
+ * same order, so the doc ids, and the arrays by doc id, stay within twice the live documents.
+ * search finds the top k documents with MaxScore, term at a time: terms go by their bound,
+ * and once the bounds of the terms left together are below the k-th score so far, no new
+ * document can make it, so the rest of the terms only add to the documents already found.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public class InvertedIndex {
+	private byte[][] postings; // by term id, varint pairs of doc gap and tf
+	private int[] used; // bytes used in postings[id]
+	private int[] last; // last doc id in postings[id], -1 for an empty list
+	private int[] maxTf; // biggest tf in postings[id], bounds the score of the term
+	private int[] minLength; // shortest document in postings[id], bounds it too
+	private int[] lengths; // length of every doc id
+	private final BitSet removed; // doc ids removed
+	private int docs; // doc ids given out
+	private int live; // documents not removed
+	private int dead; // removed documents still in the lists
+
+	public InvertedIndex() {
+		postings = new byte[16][];
+		used = new int[16];
+		last = new int[16];
+		maxTf = new int[16];
+		minLength = new int[16];
+		lengths = new int[16];
+		Arrays.fill(last, -1);
+		removed = new BitSet();
+	}
+
+	/**
+	 * @param ids term ids of the words of the document, each once.
+	 * @param tf frequency of ids[k] in the document.
+	 * @param n number of words.
+	 * @param length words in the document before stop word elimination.
+	 * @return doc id of the document.
+	 */
+	public int add(int[] ids, int[] tf, int n, int length) {
+		int doc = docs++;
+		if (doc == lengths.length)
+			lengths = Arrays.copyOf(lengths, 2 * doc);
+		lengths[doc] = length;
+		for (int k = 0; k < n; k++) {
+			int id = ids[k];
+			grow(id);
+			byte[] list = postings[id];
+			if (list == null)
+				postings[id] = list = new byte[16];
+			else if (used[id] + 10 > list.length) // two varints fit
+				postings[id] = list = Arrays.copyOf(list, 2 * used[id] + 10);
+			int pos = writeVarint(list, used[id], doc - last[id]);
+			used[id] = writeVarint(list, pos, tf[k]);
+			maxTf[id] = Math.max(maxTf[id], tf[k]);
+			minLength[id] = last[id] < 0 ? length : Math.min(minLength[id], length);
+			last[id] = doc;
+		}
+		live++;
+		return doc;
+	}
+
+	/**
+	 * @param doc doc id of a document in the index.
+	 * @return null if the doc ids stay, otherwise the new doc id of every old one, -1 for the
+	 *         removed ones, which the ids kept by the caller have to follow.
+	 */
+	public int[] remove(int doc) {
+		if (doc < 0 || doc >= docs || removed.get(doc))
+			return null;
+		removed.set(doc);
+		live--;
+		dead++;
+		if (dead > live && dead >= 16)
+			return compact();
+		return null;
+	}
+
+	/**
+	 * Forget every posting of a term, e.g. when its id is given to another word.
+	 */
+	public void clearTerm(int id) {
+		if (id >= postings.length)
+			return;
+		postings[id] = null;
+		used[id] = 0;
+		last[id] = -1;
+		maxTf[id] = 0;
+		minLength[id] = 0;
+	}
+
+	/**
+	 * @return documents in the index.
+	 */
+	public int size() {
+		return live;
+	}
+
+	/**
+	 * @return bytes used by the posting lists.
+	 */
+	public long bytes() {
+		long bytes = 0;
+		for (int id = 0; id < postings.length; id++) {
+			bytes += used[id];
+		}
+		return bytes;
+	}
+
+	/**
+	 * Find the documents with the biggest dot product of their tf weights with the query.
+	 * Documents with the same score go by doc id, the older first.
+	 *
+	 * @param query weight of every term, negative weights are not allowed.
+	 * @param weighting tf weight of a word in a document.
+	 * @param k number of documents wanted.
+	 * @param outDocs filled with the doc ids, best first.
+	 * @param outScores filled with their scores.
+	 * @return number of documents found, only documents with a word of the query count.
+	 */
+	public int search(SparseVector query, WeightTable weighting, int k, int[] outDocs, double[] outScores) {
+		if (k == 0)
+			return 0;
+		// the terms of the query with postings, by their bound descending
+		int n = 0;
+		long[] order = new long[query.nnz()]; // bound as float bits, biggest first, then the entry in query
+		double[] bounds = new double[query.nnz()];
+		for (int j = 0; j < query.nnz(); j++) {
+			int id = query.index(j);
+			if (query.value(j) < 0)
+				throw new IllegalArgumentException("negative weight of term " + id);
+			if (query.value(j) > 0 && id < postings.length && used[id] > 0) {
+				bounds[j] = query.value(j) * weighting.tf(maxTf[id], minLength[id]);
+				// bits of positive floats grow with the value
+				order[n++] = (long) (Integer.MAX_VALUE - Float.floatToIntBits((float) bounds[j])) << 32 | j;
+			}
+		}
+		Arrays.sort(order, 0, n);
+		double[] rest = new double[n + 1]; // bound of the terms from i on together, in this order
+		for (int i = n - 1; i >= 0; i--) {
+			rest[i] = rest[i + 1] + bounds[(int) order[i]];
+		}
+
+		double[] score = new double[docs]; // partial score of every doc, 0 for none yet
+		int[] candidates = new int[16];
+		int size = 0;
+		double threshold = 0; // k-th best partial score, a lower bound of the k-th best score
+		double checked = Double.POSITIVE_INFINITY; // rest when the threshold was last computed
+		int[] pos = new int[1], doc = new int[1], tf = new int[1];
+		for (int i = 0; i < n; i++) {
+			int id = query.index((int) order[i]);
+			double weight = query.value((int) order[i]);
+			// a new doc gets rest[i] at most, once that is below the k-th score only known docs go on
+			boolean open = !(size >= k && rest[i] < threshold);
+			pos[0] = 0;
+			doc[0] = -1;
+			for (next(id, 0, pos, doc, tf); doc[0] != Integer.MAX_VALUE; next(id, 0, pos, doc, tf)) {
+				int d = doc[0];
+				if (score[d] == 0) {
+					if (!open || removed.get(d))
+						continue;
+					if (size == candidates.length)
+						candidates = Arrays.copyOf(candidates, 2 * size);
+					candidates[size++] = d;
+				}
+				score[d] += weight * weighting.tf(tf[0], lengths[d]);
+			}
+			// the threshold only matters once rest falls near it, check again every halving of rest
+			if (open && size >= k && rest[i + 1] <= checked / 2) {
+				threshold = kth(score, candidates, size, k);
+				checked = rest[i + 1];
+			}
+		}
+
+		TopK top = new TopK(k, TopK.LOWER_ID); // ties go by doc id
+		for (int c = 0; c < size; c++) {
+			top.offer(candidates[c], score[candidates[c]]);
+		}
+		return top.drain(outDocs, outScores);
+	}
+
+	/**
+	 * @return the k-th biggest score of the candidates.
+	 */
+	private static double kth(double[] score, int[] candidates, int size, int k) {
+		TopK top = new TopK(k, TopK.LOWER_ID);
+		for (int c = 0; c < size; c++) {
+			top.offer(candidates[c], score[candidates[c]]);
+		}
+		return top.worst();
+	}
+
+	/**
+	 * move cursor i to the next posting of term id, Integer.MAX_VALUE after the last.
+	 */
+	private void next(int id, int i, int[] pos, int[] doc, int[] tf) {
+		byte[] list = postings[id];
+		int p = pos[i];
+		if (p >= used[id]) {
+			doc[i] = Integer.MAX_VALUE;
+			return;
+		}
+		int gap = 0;
+		for (int shift = 0;; shift += 7) {
+			byte b = list[p++];
+			gap |= (b & 0x7f) << shift;
+			if (b >= 0)
+				break;
+		}
+		int count = 0;
+		for (int shift = 0;; shift += 7) {
+			byte b = list[p++];
+			count |= (b & 0x7f) << shift;
+			if (b >= 0)
+				break;
+		}
+		pos[i] = p;
+		doc[i] += gap;
+		tf[i] = count;
+	}
+
+	/**
+	 * drop the postings of removed documents from every list and number the live ones again.
+	 *
+	 * @return new doc id by old doc id, -1 for removed ones.
+	 */
+	private int[] compact() {
+		int[] remap = new int[docs];
+		int[] kept = new int[Math.max(16, live)];
+		for (int d = 0, next = 0; d < docs; d++) {
+			remap[d] = removed.get(d) ? -1 : next++;
+			if (remap[d] >= 0)
+				kept[remap[d]] = lengths[d];
+		}
+		int[] pos = new int[1], doc = new int[1], tf = new int[1];
+		for (int id = 0; id < postings.length; id++) {
+			if (used[id] == 0)
+				continue;
+			byte[] list = new byte[used[id]];
+			int end = 0, previous = -1, biggest = 0, shortest = Integer.MAX_VALUE;
+			pos[0] = 0;
+			doc[0] = -1;
+			for (next(id, 0, pos, doc, tf); doc[0] != Integer.MAX_VALUE; next(id, 0, pos, doc, tf)) {
+				int d = remap[doc[0]];
+				if (d < 0)
+					continue;
+				// new ids keep the order, the gaps only shrink
+				end = writeVarint(list, end, d - previous);
+				end = writeVarint(list, end, tf[0]);
+				previous = d;
+				biggest = Math.max(biggest, tf[0]);
+				shortest = Math.min(shortest, kept[d]);
+			}
+			if (end == 0) {
+				clearTerm(id);
+			} else {
+				postings[id] = Arrays.copyOf(list, end);
+				used[id] = end;
+				last[id] = previous;
+				maxTf[id] = biggest;
+				minLength[id] = shortest;
+			}
+		}
+		lengths = kept;
+		docs = live;
+		removed.clear();
+		dead = 0;
+		return remap;
+	}
+
+	private void grow(int id) {
+		if (id < postings.length)
+			return;
+		int size = Math.max(id + 1, 2 * postings.length);
+		int old = postings.length;
+		postings = Arrays.copyOf(postings, size);
+		used = Arrays.copyOf(used, size);
+		last = Arrays.copyOf(last, size);
+		maxTf = Arrays.copyOf(maxTf, size);
+		minLength = Arrays.copyOf(minLength, size);
+		Arrays.fill(last, old, size, -1);
+	}
+
+	/**
+	 * @return position after the varint.
+	 */
+	private static int writeVarint(byte[] out, int pos, int value) {
+		while ((value & ~0x7f) != 0) {
+			out[pos++] = (byte) ((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out[pos++] = (byte) value;
+		return pos;
+	}
+}
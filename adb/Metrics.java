@@ -0,0 +1,253 @@
+package adb;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.ObjectName;
+
+/**
+ * Class Metrics: In-process registry of where the time of the feedback loop goes.
+ * Every stage of a round has a timer with the number of times it ran, total and max
+ * nanoseconds and bytes allocated by the thread, and every round gives its precision,
+ * the documents accumulated and the size of the vocabulary.
+ * Off unless -Dadb.metrics=true, the flag is a constant so the JIT drops the calls.
+ * -Dadb.metrics.jmx=true registers the registry as the MXBean adb:type=Metrics too.
+ * Thread safe.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public class Metrics implements MetricsMXBean {
+	static final boolean ENABLED = Boolean.getBoolean("adb.metrics");
+	private static final int MAX_ROUNDS = 32; // precision is kept by round up to this one, later rounds go in the last
+
+	/**
+	 * Stages of a round.
+	 */
+	public enum Stage {
+		/** the session waits for the results of a query, from any backend. */
+		SEARCH,
+		/** a http search until its response starts. */
+		FETCH,
+		/** reading the response into results. */
+		PARSE,
+		/** words of new documents into tf and df. */
+		TOKENIZE,
+		/** log tf vectors of new documents into the running sums. */
+		VECTORIZE,
+		/** idf, centroids and qm. */
+		ROCCHIO,
+		/** picking and ordering the words of the new query. */
+		EXPAND
+	}
+
+	private static final Metrics REGISTRY = new Metrics();
+	// looked up only when metrics are on, it starts the management of the JVM
+	private static final ThreadMXBean THREADS = ENABLED ? ManagementFactory.getThreadMXBean() : null;
+	private static final boolean ALLOCATION = THREADS instanceof com.sun.management.ThreadMXBean
+			&& ((com.sun.management.ThreadMXBean) THREADS).isThreadAllocatedMemorySupported();
+
+	static {
+		if (ENABLED && Boolean.getBoolean("adb.metrics.jmx")) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(REGISTRY, new ObjectName("adb:type=Metrics"));
+			} catch (Exception ex) {
+				System.err.println("[WARN] Metrics not registered in JMX: " + ex);
+			}
+		}
+	}
+
+	private final Map<Stage, LongAdder> counts = new EnumMap<>(Stage.class);
+	private final Map<Stage, LongAdder> nanos = new EnumMap<>(Stage.class);
+	private final Map<Stage, LongAccumulator> maxNanos = new EnumMap<>(Stage.class);
+	private final Map<Stage, LongAdder> bytes = new EnumMap<>(Stage.class);
+	private final AtomicLongArray roundCounts = new AtomicLongArray(MAX_ROUNDS);
+	private final DoubleAdder[] precisions = new DoubleAdder[MAX_ROUNDS]; // sum of precision by round
+	private volatile long documents; // of the last round
+	private volatile long vocabulary; // of the last round
+
+	private Metrics() {
+		for (Stage stage : Stage.values()) {
+			counts.put(stage, new LongAdder());
+			nanos.put(stage, new LongAdder());
+			maxNanos.put(stage, new LongAccumulator(Math::max, 0));
+			bytes.put(stage, new LongAdder());
+		}
+		for (int i = 0; i < MAX_ROUNDS; i++) {
+			precisions[i] = new DoubleAdder();
+		}
+	}
+
+	/**
+	 * @return the registry of this JVM.
+	 */
+	public static Metrics get() {
+		return REGISTRY;
+	}
+
+	public static boolean isEnabled() {
+		return ENABLED;
+	}
+
+	/**
+	 * @return start time of a stage, 0 when metrics are off.
+	 */
+	public static long start() {
+		return ENABLED ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * @return bytes allocated by this thread so far, 0 when metrics are off or the JVM can't tell.
+	 */
+	public static long allocated() {
+		return ALLOCATION ? ((com.sun.management.ThreadMXBean) THREADS).getCurrentThreadAllocatedBytes() : 0;
+	}
+
+	/**
+	 * Count one run of a stage.
+	 *
+	 * @param stage stage that ran.
+	 * @param start start() when it began.
+	 * @param allocated allocated() when it began.
+	 */
+	public static void stop(Stage stage, long start, long allocated) {
+		if (!ENABLED)
+			return;
+		long elapsed = System.nanoTime() - start;
+		REGISTRY.counts.get(stage).increment();
+		REGISTRY.nanos.get(stage).add(elapsed);
+		REGISTRY.maxNanos.get(stage).accumulate(elapsed);
+		if (ALLOCATION)
+			REGISTRY.bytes.get(stage).add(allocated() - allocated);
+	}
+
+	/**
+	 * Count a judged round of a session.
+	 *
+	 * @param round number of the round, from 1.
+	 * @param precision precision of the round.
+	 */
+	public static void round(int round, double precision) {
+		if (!ENABLED)
+			return;
+		int i = Math.min(Math.max(round, 1), MAX_ROUNDS) - 1;
+		REGISTRY.roundCounts.incrementAndGet(i);
+		REGISTRY.precisions[i].add(precision);
+	}
+
+	/**
+	 * @param documents documents accumulated by the feedback after a round.
+	 * @param vocabulary words known by the feedback after a round.
+	 */
+	public static void history(int documents, int vocabulary) {
+		if (!ENABLED)
+			return;
+		REGISTRY.documents = documents;
+		REGISTRY.vocabulary = vocabulary;
+	}
+
+	@Override
+	public Map<String, Long> getCounts() {
+		return byName(counts);
+	}
+
+	@Override
+	public Map<String, Long> getTotalNanos() {
+		return byName(nanos);
+	}
+
+	@Override
+	public Map<String, Long> getMaxNanos() {
+		Map<String, Long> map = new TreeMap<>();
+		maxNanos.forEach((stage, max) -> map.put(stage.name(), max.get()));
+		return map;
+	}
+
+	@Override
+	public Map<String, Long> getAllocatedBytes() {
+		return byName(bytes);
+	}
+
+	@Override
+	public long getRounds() {
+		long rounds = 0;
+		for (int i = 0; i < MAX_ROUNDS; i++) {
+			rounds += roundCounts.get(i);
+		}
+		return rounds;
+	}
+
+	@Override
+	public double[] getPrecisionByRound() {
+		int last = MAX_ROUNDS;
+		while (last > 0 && roundCounts.get(last - 1) == 0)
+			last--;
+		double[] mean = new double[last];
+		for (int i = 0; i < last; i++) {
+			long n = roundCounts.get(i);
+			mean[i] = n == 0 ? 0 : precisions[i].sum() / n;
+		}
+		return mean;
+	}
+
+	@Override
+	public long getDocuments() {
+		return documents;
+	}
+
+	@Override
+	public long getVocabulary() {
+		return vocabulary;
+	}
+
+	@Override
+	public void reset() {
+		for (Stage stage : Stage.values()) {
+			counts.get(stage).reset();
+			nanos.get(stage).reset();
+			maxNanos.get(stage).reset();
+			bytes.get(stage).reset();
+		}
+		for (int i = 0; i < MAX_ROUNDS; i++) {
+			roundCounts.set(i, 0);
+			precisions[i].reset();
+		}
+		documents = 0;
+		vocabulary = 0;
+	}
+
+	private static Map<String, Long> byName(Map<Stage, LongAdder> adders) {
+		Map<String, Long> map = new TreeMap<>();
+		adders.forEach((stage, adder) -> map.put(stage.name(), adder.sum()));
+		return map;
+	}
+
+	/**
+	 * @return one line per stage that ran, and the precision by round.
+	 */
+	public String summary() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%-10s %8s %12s %12s %14s%n", "Stage", "Count", "Mean us", "Max us", "Bytes/run"));
+		for (Stage stage : Stage.values()) {
+			long n = counts.get(stage).sum();
+			if (n == 0)
+				continue;
+			sb.append(String.format("%-10s %8d %12.1f %12.1f %14d%n", stage, n, nanos.get(stage).sum() / 1e3 / n,
+					maxNanos.get(stage).get() / 1e3, bytes.get(stage).sum() / n));
+		}
+		if (getRounds() > 0) {
+			sb.append("Precision by round:");
+			for (double p : getPrecisionByRound()) {
+				sb.append(String.format(" %.2f", p));
+			}
+			sb.append(String.format("%nDocuments %d, vocabulary %d after the last round%n", documents, vocabulary));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,31 @@
+package adb;
+
+import java.util.Map;
+
+/**
+ * Interface MetricsMXBean: What JMX shows of the Metrics registry, by stage name.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public interface MetricsMXBean {
+	Map<String, Long> getCounts();
+
+	Map<String, Long> getTotalNanos();
+
+	Map<String, Long> getMaxNanos();
+
+	Map<String, Long> getAllocatedBytes();
+
+	long getRounds();
+
+	/**
+	 * @return mean precision of the first, second, ... round.
+	 */
+	double[] getPrecisionByRound();
+
+	long getDocuments();
+
+	long getVocabulary();
+
+	void reset();
+}
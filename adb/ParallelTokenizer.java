@@ -0,0 +1,149 @@
+package adb;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Class ParallelTokenizer: Tokenize a big batch of documents on a ForkJoinPool.
+ * The batch is cut in one chunk per worker, every chunk counts its words into its own
+ * TermDictionary and TermCounter, so workers share nothing. The chunks come back in
+ * document order with local ids, and merge() gives the words their ids in the global
+ * dictionary document by document, the same order the sequential path interns them,
+ * so ids, tf and df come out identical.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public class ParallelTokenizer {
+	private final StopWords stop;
+	private final ForkJoinPool pool;
+
+	/**
+	 * Words of a run of documents with ids of a local dictionary.
+	 */
+	static class Chunk {
+		final TermDictionary dictionary = new TermDictionary(); // local ids, df within the chunk
+		final int[] lengths; // length of every document before stop word elimination
+		final int[][] ids; // local ids of every document, in order of first seen
+		final int[][] counts; // tf of ids
+
+		Chunk(int documents) {
+			lengths = new int[documents];
+			ids = new int[documents][];
+			counts = new int[documents][];
+		}
+	}
+
+	/**
+	 * @param stop stop words, never counted.
+	 * @param pool pool the documents are tokenized on.
+	 */
+	public ParallelTokenizer(StopWords stop, ForkJoinPool pool) {
+		this.stop = stop;
+		this.pool = pool;
+	}
+
+	/**
+	 * @param documents documents to tokenize.
+	 * @param cache words of documents tokenized before, null to always tokenize.
+	 * @return chunks of the documents in order.
+	 */
+	Chunk[] tokenize(List<SingleResult> documents, ResultCache cache) {
+		int n = Math.max(1, Math.min(pool.getParallelism(), documents.size()));
+		Chunk[] chunks = new Chunk[n];
+		pool.invoke(new Split(documents, cache, chunks, 0, n));
+		return chunks;
+	}
+
+	/**
+	 * Give the words of a chunk ids in the global dictionary, one document after another.
+	 * df of the chunk is added once per word at the end.
+	 *
+	 * @param chunk chunk to merge.
+	 * @param d document of the chunk.
+	 * @param global local id : global id, -1 until the word is interned, one array per chunk.
+	 * @param dictionary global dictionary.
+	 * @param counter filled with the tf of the document by global id.
+	 * @return the number of words in document before stop word elimination.
+	 */
+	static int merge(Chunk chunk, int d, int[] global, TermDictionary dictionary, TermCounter counter) {
+		int[] ids = chunk.ids[d], counts = chunk.counts[d];
+		for (int k = 0; k < ids.length; k++) {
+			int id = global[ids[k]];
+			if (id < 0)
+				id = global[ids[k]] = dictionary.intern(chunk.dictionary.term(ids[k]));
+			counter.add(id, counts[k]);
+		}
+		return chunk.lengths[d];
+	}
+
+	/**
+	 * Add the df counted by a chunk to the global dictionary, after all of its documents are merged.
+	 */
+	static void mergeDocFreq(Chunk chunk, int[] global, TermDictionary dictionary) {
+		for (int local = 0; local < chunk.dictionary.size(); local++) {
+			if (global[local] >= 0)
+				dictionary.incDocFreq(global[local], chunk.dictionary.docFreq(local));
+		}
+	}
+
+	/**
+	 * Fork halves until one chunk is left, chunk c has documents c * size / chunks until (c + 1) * size / chunks.
+	 */
+	private class Split extends RecursiveAction {
+		private static final long serialVersionUID = 1L; // never serialized, RecursiveAction is Serializable
+		private final List<SingleResult> documents;
+		private final ResultCache cache;
+		private final Chunk[] chunks;
+		private final int from, to; // chunks
+
+		Split(List<SingleResult> documents, ResultCache cache, Chunk[] chunks, int from, int to) {
+			this.documents = documents;
+			this.cache = cache;
+			this.chunks = chunks;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Split(documents, cache, chunks, from, mid),
+						new Split(documents, cache, chunks, mid, to));
+				return;
+			}
+			int first = (int) ((long) from * documents.size() / chunks.length);
+			int last = (int) ((long) to * documents.size() / chunks.length);
+			Chunk chunk = new Chunk(last - first);
+			Tokenizer tokenizer = new Tokenizer(stop);
+			TermCounter counter = new TermCounter();
+			for (int d = 0; d < last - first; d++) {
+				SingleResult sr = documents.get(first + d);
+				chunk.lengths[d] = tokenize(sr, tokenizer, chunk.dictionary, counter);
+				int[] ids = new int[counter.size()], counts = new int[counter.size()];
+				for (int k = 0; k < ids.length; k++) {
+					ids[k] = counter.id(k);
+					counts[k] = counter.count(k);
+					chunk.dictionary.incDocFreq(ids[k]);
+				}
+				chunk.ids[d] = ids;
+				chunk.counts[d] = counts;
+				counter.clear();
+			}
+			chunks[from] = chunk;
+		}
+
+		private int tokenize(SingleResult sr, Tokenizer tokenizer, TermDictionary dictionary, TermCounter counter) {
+			if (cache == null)
+				return tokenizer.tokenize(sr.getTitle(), sr.getSummary(), dictionary, counter);
+			ResultCache.Tokens tokens = cache.getTokens(sr.getUrl(), sr.getTitle(), sr.getSummary());
+			if (tokens != null)
+				return tokens.addTo(dictionary, counter);
+			int length = tokenizer.tokenize(sr.getTitle(), sr.getSummary(), dictionary, counter);
+			cache.putTokens(sr.getUrl(), sr.getTitle(), sr.getSummary(),
+					ResultCache.Tokens.of(length, dictionary, counter));
+			return length;
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package adb;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Class Prefetcher: Fetch the results of likely next queries in the background.
+ * While the user is judging, the session guesses the next query from the judgments so far,
+ * and the results of the guess are fetched and parsed before they are asked for. A guess
+ * that turns out wrong is cancelled, only the last few guesses are kept in flight. Fetches
+ * and guesses run on the executor, a bounded one keeps a burst of guesses from taking a
+ * thread each.
+ * One Prefetcher per session, the executor can be shared by many sessions.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public class Prefetcher {
+	private final SearchBackend backend;
+	private final ExecutorService executor;
+	private final int maxPending;
+	private final LinkedHashMap<String, Future<List<SingleResult>>> pending; // query : fetch, oldest first
+	private final List<Future<?>> guesses; // guesses of the current generation
+	private int generation; // number of guesses so far, older guesses are stale
+	private int hits; // searches served by a fetch in flight
+	private int searches;
+
+	/**
+	 * @param backend where the results come from, called from the executor threads.
+	 * @param executor runs the guesses and the fetches.
+	 * @param maxPending fetches in flight at most, the oldest is cancelled first.
+	 */
+	public Prefetcher(SearchBackend backend, ExecutorService executor, int maxPending) {
+		this.backend = backend;
+		this.executor = executor;
+		this.maxPending = maxPending;
+		pending = new LinkedHashMap<>();
+		guesses = new ArrayList<>();
+	}
+
+	/**
+	 * Guess the next query in the background and fetch its results.
+	 * Older guesses are cancelled, and a guess made stale before it ends fetches nothing.
+	 *
+	 * @param nextQueries each computes a guess, null for no next query.
+	 */
+	@SafeVarargs
+	public final synchronized void speculate(Callable<String>... nextQueries) {
+		cancelGuesses();
+		int current = ++generation;
+		for (Callable<String> nextQuery : nextQueries) {
+			guesses.add(executor.submit(() -> {
+				if (isStale(current))
+					return;
+				try {
+					String query = nextQuery.call();
+					if (query != null)
+						prefetch(query, current);
+				} catch (Exception ex) {
+					// a failed guess only costs the prefetch
+				}
+			}));
+		}
+	}
+
+	private synchronized boolean isStale(int guess) {
+		return guess != generation;
+	}
+
+	/**
+	 * Start fetching the results of a query, unless they are already in flight.
+	 *
+	 * @param query query to fetch.
+	 */
+	public synchronized void prefetch(String query) {
+		prefetch(query, generation);
+	}
+
+	/**
+	 * Start fetching the results of a guess, unless it is stale or already in flight. Checked
+	 * under the same lock as search and discard, so a guess can't start a fetch after them.
+	 */
+	private synchronized void prefetch(String query, int guess) {
+		String key = query.trim();
+		if (isStale(guess) || pending.containsKey(key))
+			return;
+		while (pending.size() >= maxPending) {
+			Iterator<Future<List<SingleResult>>> oldest = pending.values().iterator();
+			oldest.next().cancel(false); // not interrupted, see discard
+			oldest.remove();
+		}
+		pending.put(key, executor.submit(() -> backend.search(query)));
+	}
+
+	/**
+	 * Results of a query, from the fetch in flight if it was guessed, otherwise searched now.
+	 * Every other fetch in flight is stale and cancelled.
+	 *
+	 * @param query query to search.
+	 * @return results of the query.
+	 * @throws Exception
+	 */
+	public List<SingleResult> search(String query) throws Exception {
+		Future<List<SingleResult>> fetch;
+		synchronized (this) {
+			generation++;
+			fetch = pending.remove(query.trim());
+			discard();
+			searches++;
+		}
+		if (fetch != null) {
+			try {
+				List<SingleResult> results = fetch.get();
+				synchronized (this) {
+					hits++;
+				}
+				return results;
+			} catch (ExecutionException | CancellationException ex) {
+				// search again below
+			}
+		}
+		return backend.search(query);
+	}
+
+	/**
+	 * Cancel every guess and fetch in flight. Neither is interrupted, an interrupt closes the
+	 * files it reads, e.g. of a ResultCache behind the backend; a fetch already running only
+	 * costs its request.
+	 */
+	public synchronized void discard() {
+		generation++;
+		cancelGuesses();
+		for (Future<List<SingleResult>> fetch : pending.values()) {
+			fetch.cancel(false);
+		}
+		pending.clear();
+	}
+
+	private void cancelGuesses() {
+		// not interrupted, see discard, a guess fetches nothing once stale
+		for (Future<?> guess : guesses) {
+			guess.cancel(false);
+		}
+		guesses.clear();
+	}
+
+	/**
+	 * @return searches served by a prefetched result.
+	 */
+	public synchronized int getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return all searches.
+	 */
+	public synchronized int getSearches() {
+		return searches;
+	}
+}
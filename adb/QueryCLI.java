@@ -1,22 +1,18 @@
 package adb;
 
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.io.InputStream;
-import java.io.PrintWriter;
-import java.io.UnsupportedEncodingException;
-import java.net.URL;
-import java.net.URLConnection;
-import java.net.URLEncoder;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 
-import org.apache.commons.codec.binary.Base64;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
@@ -28,8 +24,30 @@ import org.w3c.dom.NodeList;
  */
 public class QueryCLI {
 
-	private final static Scanner SCANNER = new Scanner(System.in);
-	private static PrintWriter transcript;
+	/** system property that turns prefetching on. */
+	public static final String PREFETCH = "adb.prefetch";
+	/** system property with the directory of the ResultCache, no cache if not set. */
+	public static final String CACHE = "adb.cache";
+	/** system property with the size limit of the cache in bytes. */
+	public static final String CACHE_BYTES = "adb.cache.bytes";
+	private static final long DEFAULT_CACHE_BYTES = 64L << 20;
+	/** system property with the file of the TermStatsStore, idf of this session only if not set. */
+	public static final String STATS = "adb.stats";
+	/** system property with the TermWeighting, e.g. bm25 or pivoted:0.2,30, log tf idf if not set. */
+	public static final String WEIGHTING = "adb.weighting";
+	/** system property with alpha,beta,gamma of Rocchio, 1,.75,.15 if not set. */
+	public static final String ROCCHIO = "adb.rocchio";
+	/** system property with the results judged in a round, 10 if not set. */
+	public static final String RESULTS = "adb.results";
+	/** system property with the url of the search, e.g. a StandInServer, the Bing API if not set. */
+	public static final String ENDPOINT = "adb.endpoint";
+	/** system property with the epoch millis the JVM was launched at, to print the time to the first results. */
+	public static final String LAUNCHED = "adb.launched";
+	private static final int MAX_PENDING = 4; // prefetches in flight, two guesses of two judgments
+
+	private static final int TRANSCRIPT_ROUNDS = 64; // rounds waiting for the transcript writer
+	private static TranscriptWriter transcript;
+	private static TermStatsStore termStats; // null if not set
 
 	public static void main(String[] args) throws Exception {
 
@@ -40,99 +58,116 @@ public class QueryCLI {
 		}
 
 		String accountKey = args[0]; // get accountKey for bing
-		float targetPrecision = Float.parseFloat(args[1]), currentPrecision = 0;
+		float targetPrecision = Float.parseFloat(args[1]);
 		String searchKeyword = args[2]; // keywords within ' '.
-		final int TOP_QUERIES = 10; 
-		transcript = new PrintWriter(new FileOutputStream(new File("transcript.txt"), true)); // log file
-		int round = 0; //record the current round of query.
-		
-		// Since our relevance feedback is accumulated.
-		RelevanceFeedback feedback = new RelevanceFeedback();
-
-		while (currentPrecision < targetPrecision) {
-			// log info
-			transcript.println("=====================================");
-			transcript.println("ROUND " + (++round));
-			transcript.println("QUERY " + searchKeyword);
-			// print to screen about the query.
-			System.out.println("Parameters:");
-			System.out.println("Client key  = " + accountKey);
-			System.out.println("Query       = " + searchKeyword);
-			System.out.println("Precision   = " + targetPrecision);
-			InputStream inputStream = getBingSearchContent(accountKey, searchKeyword);
-			List<SingleResult> currentSearchResult = parseXml(inputStream);
-			int totalRelevant = 0, currentResultOrder = 0;
-			List<SingleResult> relevantResult = new ArrayList<>();
-			
-			// We do not handle scenarios when results are less than TOP_QUERIES.
-			if (currentSearchResult.size() != TOP_QUERIES) {
-				System.err.println(
-						"[ERROR] Total available search results are less than " + TOP_QUERIES + ", cannot proceed.");
-				clearAndExit(1);
-			}
+		double[] rocchio;
+		try {
+			rocchio = rocchio();
+		} catch (IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			System.exit(1);
+			return;
+		}
+		// log file, transcript.txt is the text view of transcript.jsonl
+		transcript = new TranscriptWriter(Paths.get("transcript.jsonl"), Paths.get("transcript.txt"), TRANSCRIPT_ROUNDS);
+
+		int results = Integer.getInteger(RESULTS, FeedbackSession.TOP_QUERIES);
+		BingSearchBackend bing = new BingSearchBackend(accountKey,
+				System.getProperty(ENDPOINT, BingSearchBackend.BING_URL));
+		bing.setVerbose(true);
+		// -Dadb.results=50 judges 50 results a round, fetched as 5 pages at once
+		bing.setPages((results + BingSearchBackend.PAGE_SIZE - 1) / BingSearchBackend.PAGE_SIZE);
+		SearchBackend backend = bing;
+		ResultCache cache = null;
+		if (System.getProperty(CACHE) != null) {
+			cache = new ResultCache(Paths.get(System.getProperty(CACHE)),
+					Long.getLong(CACHE_BYTES, DEFAULT_CACHE_BYTES));
+			backend = new CachingSearchBackend(bing, cache, results);
+		}
+		if (System.getProperty(LAUNCHED) != null)
+			backend = timeFirstSearch(backend, Long.getLong(LAUNCHED));
+		FeedbackSession session = new FeedbackSession(backend, new ConsoleJudge(), targetPrecision);
+		session.setResultsPerRound(results);
+		session.setWeighting(TermWeighting.parse(System.getProperty(WEIGHTING, "log")), rocchio[0], rocchio[1],
+				rocchio[2]);
+		session.setCache(cache);
+		if (System.getProperty(STATS) != null) {
+			termStats = openTermStats(Paths.get(System.getProperty(STATS)));
+			session.setTermStats(termStats);
+		}
+		session.setTranscript(transcript);
+		session.setVerbose(true);
+		session.setClientKey(accountKey);
+		// -Dadb.prefetch=true fetches guessed next rounds while judging, at the cost of more searches
+		if (Boolean.getBoolean(PREFETCH)) {
+			// the fetches in flight and the two guesses, no more threads
+			ExecutorService executor = Executors.newFixedThreadPool(MAX_PENDING + 2, runnable -> {
+				Thread thread = new Thread(runnable, "prefetch");
+				thread.setDaemon(true);
+				return thread;
+			});
+			session.setPrefetcher(new Prefetcher(backend, executor, MAX_PENDING));
+		}
+		clearAndExit(session.run(searchKeyword));
+	}
 
-			System.out.println("Bing Search Results:\n======================");
-			for (SingleResult singleResult : currentSearchResult) {
-				singleResult.setIsRelevant(displayResultAndAskRelevance(++currentResultOrder, singleResult));
-				relevantResult.add(singleResult);
-				if (singleResult.getIsRelevant()) {
-					totalRelevant++; // Count for total relevance so as to calculate the precision.
-				}
-				transcript.println("\nResult " + currentResultOrder);
-				transcript.println("Relevant: " + (singleResult.getIsRelevant() ? "YES" : "NO"));
-				transcript.println(singleResult + "\n");
-			}
-			currentPrecision = (float) totalRelevant / TOP_QUERIES;
-			transcript.println("PRECISION " + currentPrecision);
-			transcript.flush();
-			System.out.println("======================\nFEEDBACK SUMMARY");
-			System.out.println("Query " + searchKeyword);
-			System.out.println("Precision " + currentPrecision);
-			if (currentPrecision < targetPrecision && totalRelevant != 0) {
-				System.out.println("Still below the desired precision of " + targetPrecision);
-                String newKeywords;
-                // Decide whether we need one or two more term(s) in the new query.
-                // See README - bad/good feedback
-                if (currentPrecision <= 0.5)
-				    newKeywords = feedback.queryExpansion(1, relevantResult, searchKeyword.split(" "));
-				else
-				    newKeywords = feedback.queryExpansion(2, relevantResult, searchKeyword.split(" "));
-				System.out.println("Augmented query: " + newKeywords);
-				System.out.println("======================");
-						searchKeyword = newKeywords;
-			} else if (totalRelevant == 0) {
-				System.out.println("Below desired precision, but can no longer augment the query.");
-				clearAndExit(1);
+	/**
+	 * @return alpha, beta and gamma of -Dadb.rocchio, or the defaults.
+	 */
+	static double[] rocchio() {
+		String constants = System.getProperty(ROCCHIO);
+		if (constants == null)
+			return new double[] { RelevanceFeedback.ALPHA, RelevanceFeedback.BETA, RelevanceFeedback.GAMMA };
+		return parseRocchio(constants);
+	}
+
+	/**
+	 * @param constants "alpha,beta,gamma".
+	 * @return the three constants.
+	 * @throws IllegalArgumentException if there are not exactly three numbers.
+	 */
+	static double[] parseRocchio(String constants) {
+		String[] values = constants.split(",");
+		if (values.length != 3)
+			throw new IllegalArgumentException("Rocchio constants need alpha,beta,gamma: '" + constants + "'");
+		double[] rocchio = new double[3];
+		try {
+			for (int i = 0; i < rocchio.length; i++) {
+				rocchio[i] = Double.parseDouble(values[i].trim());
 			}
+		} catch (NumberFormatException ex) {
+			throw new IllegalArgumentException("Rocchio constants need alpha,beta,gamma: '" + constants + "'");
 		}
+		return rocchio;
+	}
 
-		feedback.allClear();
-		System.out.println("Desired precision reached, done");
-		clearAndExit(0);
+	/**
+	 * @param launched epoch millis the JVM was launched at.
+	 * @return backend that prints the millis from the launch to the end of its first search.
+	 */
+	private static SearchBackend timeFirstSearch(SearchBackend backend, long launched) {
+		boolean[] first = { true };
+		return query -> {
+			List<SingleResult> results = backend.search(query);
+			if (first[0]) {
+				first[0] = false;
+				System.err.println("[INFO] first results " + (System.currentTimeMillis() - launched) + " ms after launch");
+			}
+			return results;
+		};
 	}
 
 	/**
-	 * Get the xml stream according to the searchKeyword.
-	 * 
-	 * @param accountKey Bing account key needed for the search.
-	 * @param searchKeyword Current search keyword we use to get the result.
-	 * @return Xml stream that contains the returned result.
-	 * @throws UnsupportedEncodingException
-	 * @throws IOException
+	 * @return writer of the term stats, or a reader if another process writes them.
 	 */
-	private static InputStream getBingSearchContent(String accountKey, String searchKeyword)
-			throws UnsupportedEncodingException, IOException {
-		String bingUrl = "https://api.datamarket.azure.com/Bing/Search/Web?Query=%27"
-				+ URLEncoder.encode(searchKeyword, "UTF-8") + "%27&$top=10&$format=Atom";
-		System.out.println("URL: " + bingUrl);
-		byte[] accountKeyBytes = Base64.encodeBase64((accountKey + ":" + accountKey).getBytes());
-		String accountKeyEnc = new String(accountKeyBytes);
-
-		URL url = new URL(bingUrl);
-		URLConnection urlConnection = url.openConnection();
-		urlConnection.setRequestProperty("Authorization", "Basic " + accountKeyEnc);
-
-		return (InputStream) urlConnection.getContent();
+	private static TermStatsStore openTermStats(Path file) throws IOException {
+		try {
+			return TermStatsStore.openWriter(file);
+		} catch (IOException ex) {
+			if (!Files.exists(file))
+				throw ex;
+			return TermStatsStore.openReader(file);
+		}
 	}
 
 	/**
@@ -142,7 +177,7 @@ public class QueryCLI {
 	 * @return List of SingleResult object that contains all information needed for analysis.
 	 * @throws Exception
 	 */
-	private static List<SingleResult> parseXml(InputStream xmlStream) throws Exception {
+	static List<SingleResult> parseXml(InputStream xmlStream) throws Exception {
 		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
 		DocumentBuilder builder = factory.newDocumentBuilder();
 
@@ -157,7 +192,6 @@ public class QueryCLI {
 					getFirstElementByTagName(properties, "d:Title").getTextContent(),
 					getFirstElementByTagName(properties, "d:Description").getTextContent()));
 		}
-		System.out.println("Total no of results : " + allResults.size());
 		return allResults;
 	}
 
@@ -165,25 +199,22 @@ public class QueryCLI {
 		return (Element) parentElement.getElementsByTagName(name).item(0);
 	}
 
-	/**
-	 * Display message of one result and ask for relevance on the CLI.
-	 * 
-	 * @param currentResult Current result number, for display.
-	 * @param singleResult Current result.
-	 * @return The document is relevant to the desired query or not.
-	 * @throws IOException
-	 */
-	private static boolean displayResultAndAskRelevance(int currentResult, SingleResult singleResult)
-			throws IOException {
-		System.out.println("Result " + currentResult);
-		System.out.println(singleResult);
-		System.out.print("Relevant (Y/N)? ");
-		return SCANNER.next().equalsIgnoreCase("Y");
-	}
-
 	private static void clearAndExit(int exitNum) {
-		transcript.flush();
-		transcript.close();
+		if (Metrics.isEnabled())
+			System.err.print(Metrics.get().summary());
+		try {
+			transcript.close();
+		} catch (IOException ex) {
+			System.err.println("[ERROR] " + ex.getMessage());
+		}
+		// forces the counts to disk and releases the writer lock
+		if (termStats != null) {
+			try {
+				termStats.close();
+			} catch (IOException ex) {
+				System.err.println("[ERROR] " + ex.getMessage());
+			}
+		}
 		System.exit(exitNum);
 	}
 
@@ -1,10 +1,9 @@
 package adb;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
-import java.util.regex.Pattern;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Class RelevanceFeedback: Implemented relevance feedback using Rocchio's algorithm with penalized weight
@@ -12,22 +11,41 @@ import java.util.regex.Pattern;
  * Advanced Database Systems Project 1
  */
 public class RelevanceFeedback {
-	// Rocchio constant
+	// Rocchio constant, defaults of setRocchio
 	static final double ALPHA = 1.0;
 	static final double BETA = .75;
 	static final double GAMMA = .15;
 
-	private Set<String> stop; // Stop word elimination.
+	// fewer new documents than this are tokenized in this thread even with a ParallelTokenizer
+	static final int PARALLEL_MIN = 64;
+
+	// loops of the dense Rocchio path, on the Vector API when it is there
+	static final DenseKernels KERNELS = DenseKernels.best();
+
+	private StopWords stop; // Stop word elimination, shared by all instances.
 	private String[] query; // query words
 	private List<Term> terms; // documents after procession
 	private Set<String> history; // avoid duplicate of a Term (document)
-	private HashMap<String, Integer> termToIdx; // String : index
-	private HashMap<Integer, String> idxToTerm; // index : String
-	private HashMap<String, Integer> docFreq; // String : # docs
+	private TermDictionary dictionary; // String : index, index : String, index : # docs
+	private TermCounter counter; // tf of the document in procession
+	private Tokenizer tokenizer; // split documents into words except stop words
+	private ResultCache cache; // words of documents tokenized before, null for none
+	private ParallelTokenizer parallel; // tokenizes big batches, null to always tokenize in this thread
+	private TermStatsStore termStats; // df over earlier sessions, null for this session only
+	private int recorded; // documents already added to termStats
 
-	// vector space in group of dr and dnr
-	private ArrayList<double[]> dr; // relevant document tf-idf weights
-	private ArrayList<double[]> dnr; // non-relevant document tf-idf weights
+	// running sums of dr and dnr, updated for new documents only
+	private RocchioState rocchioState;
+	private WeightTable weighting; // tf and idf of the words, log tf idf by default
+	private double alpha = ALPHA;
+	private double beta = BETA;
+	private double gamma = GAMMA;
+	// dense buffers of rocchio by term index, grown with the vocabulary and kept between rounds
+	private double[] idfBuffer = new double[0];
+	private double[] queryBuffer = new double[0]; // alpha * q0, 0 outside of q0 between rounds
+	private double[] qmBuffer = new double[0];
+	private final SparseVector q0 = new SparseVector(16); // tf-idf of the query, filled every round
+	private final SparseVector qmVector = new SparseVector(64); // qm of the dense rocchio, filled every round
 
     // used compute current round precision
 	private double dr_n; // number of relevant document in current round
@@ -36,6 +54,42 @@ public class RelevanceFeedback {
     // used to compute penalty
 	private double lastPrecision; // precision in the last round
 	private HashMap<String, Double> markovPenalty; // map query term with our penalty factor
+
+	// bounded history, 0 for no limit
+	private int maxDocs; // documents kept at most
+	private int maxTerms; // words kept at most, words only the query has don't count against it
+	private Eviction eviction = Eviction.AGE;
+
+	private TieBreak tieBreak = TieBreak.FIRST_SEEN; // order of expansion words with the same weight
+
+	// postings of the documents and candidates for rank, built on first use, null before
+	private InvertedIndex index;
+	private HashMap<String, Integer> indexed; // url : doc id in index
+	private List<String> indexedUrls; // doc id : url, null once removed
+	private SparseVector lastQm; // qm of the last expansion, null before the first one
+	private String[] lastQmWords = new String[0]; // word of every entry of lastQm, its id may go to another word later
+
+	private boolean verbose = true; // print penalty factor of every round of queryExpansion
+
+	/**
+	 * Which documents leave first when the history is over its limit.
+	 */
+	public enum Eviction {
+		/** the oldest documents. */
+		AGE,
+		/** the documents with the smallest share of the weights of qm. */
+		CONTRIBUTION
+	}
+
+	/**
+	 * Which word is taken first when expansion words have the same weight.
+	 */
+	public enum TieBreak {
+		/** the word seen first in the documents. */
+		FIRST_SEEN,
+		/** the word first in alphabetical order. */
+		ALPHABETICAL
+	}
 	
 	/**
 	 * Class QueryExpansion: Comparable class used for sorting weights of queries.
@@ -67,31 +121,150 @@ public class RelevanceFeedback {
 	 */
 	public void allClear() {
 		query = null;
+		recorded = 0;
 		history.clear();
 		terms.clear();
-		idxToTerm.clear();
-		termToIdx.clear();
-		docFreq.clear();
-		dr.clear();
-		dnr.clear();
+		dictionary.clear();
+		rocchioState.clear();
 		markovPenalty.clear();
+		index = null;
+		lastQm = null;
 		dr_n = 0;
 		dnr_n = 0;
 	}
 
 	public RelevanceFeedback() {
-		stop = getStopSet();
+		this(StopWords.shared());
+	}
+
+	/**
+	 * @param stop stop words, immutable, so one index can be shared by all instances.
+	 */
+	public RelevanceFeedback(StopWords stop) {
+		this.stop = stop;
 		terms = new ArrayList<>();
 		history = new HashSet<>();
-		termToIdx = new HashMap<>();
-		idxToTerm = new HashMap<>();
-		docFreq = new HashMap<>();
-		dr = new ArrayList<>();
-		dnr = new ArrayList<>();
+		dictionary = new TermDictionary();
+		counter = new TermCounter();
+		tokenizer = new Tokenizer(stop);
+		rocchioState = new RocchioState();
+		weighting = new WeightTable(TermWeighting.LOG_TF_IDF);
 		markovPenalty = new HashMap<>();
 		lastPrecision = 1;
 	}
 
+	/**
+	 * Independent copy of the accumulated state, to try a query expansion on without
+	 * changing this one. Processed documents are shared, nothing changes them, setWeighting
+	 * replaces them.
+	 * The copy does not use the cache, and builds its own index if it ranks.
+	 * 
+	 * @return copy that prints nothing.
+	 */
+	public RelevanceFeedback copy() {
+		RelevanceFeedback copy = new RelevanceFeedback(stop);
+		copy.query = query;
+		copy.terms.addAll(terms);
+		copy.history.addAll(history);
+		copy.dictionary = new TermDictionary(dictionary);
+		copy.rocchioState = new RocchioState(rocchioState);
+		copy.dr_n = dr_n;
+		copy.dnr_n = dnr_n;
+		copy.lastPrecision = lastPrecision;
+		copy.markovPenalty.putAll(markovPenalty);
+		copy.termStats = termStats;
+		copy.recorded = recorded;
+		copy.maxDocs = maxDocs;
+		copy.maxTerms = maxTerms;
+		copy.eviction = eviction;
+		copy.tieBreak = tieBreak;
+		copy.parallel = parallel;
+		copy.weighting = new WeightTable(weighting.getWeighting());
+		copy.alpha = alpha;
+		copy.beta = beta;
+		copy.gamma = gamma;
+		// the buffers of this one are filled again by its next round
+		copy.lastQm = lastQm == null ? null : copy.qmVector.set(lastQm);
+		copy.lastQmWords = lastQmWords.clone();
+		copy.verbose = false;
+		return copy;
+	}
+
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+
+	/**
+	 * Bound the memory of a long session. When a round takes the history over a limit,
+	 * documents are forgotten until it is back under: their url, their share of the sums
+	 * and of df go, and words no document has any more give their ids back.
+	 * 
+	 * @param maxDocs documents kept at most, 0 for no limit.
+	 * @param maxTerms words kept at most, 0 for no limit. Words of the query that no document
+	 *        has don't count, and words of the query are never forgotten.
+	 * @param eviction which documents go first.
+	 */
+	public void setHistoryLimit(int maxDocs, int maxTerms, Eviction eviction) {
+		this.maxDocs = maxDocs;
+		this.maxTerms = maxTerms;
+		this.eviction = eviction;
+	}
+
+	/**
+	 * Tokenize rounds of at least PARALLEL_MIN new documents on a pool, the result is the
+	 * same as tokenizing them one after another.
+	 * 
+	 * @param pool pool to tokenize on, null to always tokenize in this thread.
+	 */
+	public void setParallel(ForkJoinPool pool) {
+		parallel = pool == null ? null : new ParallelTokenizer(stop, pool);
+	}
+
+	/**
+	 * @param tieBreak which word is taken first when expansion words have the same weight.
+	 */
+	public void setTieBreak(TieBreak tieBreak) {
+		this.tieBreak = tieBreak;
+	}
+
+	/**
+	 * Weigh words with another scheme, the documents kept are weighed again into new Terms,
+	 * copies keep the old ones.
+	 * 
+	 * @param weighting tf and idf of the words, TermWeighting.LOG_TF_IDF by default.
+	 */
+	public void setWeighting(TermWeighting weighting) {
+		this.weighting = new WeightTable(weighting);
+		rocchioState.clear();
+		for (int i = 0; i < terms.size(); i++) {
+			Term doc = terms.get(i);
+			Term term = new Term();
+			term.setUrl(doc.getUrl());
+			term.setIsRelevant(doc.getIsRelevant());
+			term.setLength(doc.getLength());
+			term.setTf(doc.getIds(), doc.getTf());
+			term.setWeights(tfVector(term));
+			terms.set(i, term);
+			rocchioState.addDocument(term.getWeights(), term.getIsRelevant());
+		}
+	}
+
+	/**
+	 * qm = alpha * q0 + beta * dr - gamma * dnr, 1, .75 and .15 by default.
+	 */
+	public void setRocchio(double alpha, double beta, double gamma) {
+		this.alpha = alpha;
+		this.beta = beta;
+		this.gamma = gamma;
+	}
+
+	/**
+	 * @param cache words of documents seen in earlier sessions, null to always tokenize.
+	 */
+	public void setCache(ResultCache cache) {
+		this.cache = cache;
+	}
+
 	public String[] getQuery() {
 		return query;
 	}
@@ -101,194 +274,407 @@ public class RelevanceFeedback {
 	}
 
 	/**
-	 * Get the stop words from file.
+	 * @return number of words known, the query words included.
+	 */
+	public int getVocabulary() {
+		return dictionary.live();
+	}
+
+	RocchioState getRocchioState() {
+		return rocchioState;
+	}
+
+	/**
+	 * @return qm of the last expansion, null before the first one.
+	 */
+	SparseVector getLastQm() {
+		return lastQm;
+	}
+
+	/**
+	 * idf over the documents of earlier sessions too, not only this one.
 	 * 
-	 * @return stop stop words constructed from adb/stop.txt
+	 * @param termStats df of earlier sessions, null for this session only.
 	 */
-	private Set<String> getStopSet() {
-		Set<String> stop = null;
+	public void setTermStats(TermStatsStore termStats) {
+		this.termStats = termStats;
+	}
 
-		try {
-			BufferedReader text = new BufferedReader(new FileReader("stop.txt"));
-			stop = new HashSet<>();
-			String word;
-			while ((word = text.readLine()) != null) {
-				stop.add(word);
+	/**
+	 * Add the documents of this session not added yet to the term stats, if it can be written.
+	 * 
+	 * @throws IOException
+	 */
+	public void recordTermStats() throws IOException {
+		if (termStats == null || !termStats.isWriter())
+			return;
+		String[] words = new String[16];
+		for (; recorded < terms.size(); recorded++) {
+			int[] ids = terms.get(recorded).getIds();
+			if (ids.length > words.length)
+				words = new String[ids.length];
+			for (int k = 0; k < ids.length; k++) {
+				words[k] = dictionary.term(ids[k]);
+			}
+			termStats.addDocument(words, ids.length);
+			// from now on the document is counted by the term stats
+			for (int id : ids) {
+				dictionary.decDocFreq(id);
 			}
-			text.close();
-		} catch (IOException ex) {
-			System.err.println(ex + " stop elimination can't proceed");
-			System.exit(2);
 		}
+	}
 
-		return stop;
+	/**
+	 * Take one judged document now, e.g. as soon as the user judges it. Its words and
+	 * weights go to the running sums, so the next expansion only runs rocchio.
+	 * A document seen before is skipped.
+	 * 
+	 * @param document result with its relevance set.
+	 */
+	public void addJudgment(SingleResult document) {
+		preProcession(Collections.singletonList(document));
 	}
 
 	/**
-	 * process List of SingleResult to List of Term set up terms, query, termToIdx, idxToTerm.
+	 * Take judged documents now, big batches are tokenized in parallel, see setParallel.
+	 * 
+	 * @param documents results with their relevance set.
+	 */
+	public void addJudgments(List<SingleResult> documents) {
+		preProcession(documents);
+	}
+
+	/**
+	 * @return documents judged since the last expansion, not counting the ones seen before.
+	 */
+	public int getJudged() {
+		return (int) (dr_n + dnr_n);
+	}
+
+	/**
+	 * @return precision over the documents judged since the last expansion, 0 for none.
+	 */
+	public double getPrecision() {
+		return getJudged() == 0 ? 0 : dr_n / (dr_n + dnr_n);
+	}
+
+	/**
+	 * process List of SingleResult to List of Term set up terms, dictionary.
 	 * 
 	 * @param documents lists of SingleResult, documents haven't been processed.
-	 * @param query query that contains all keywords, separated by white space.
 	 */
-	private void preProcession(List<SingleResult> documents, String[] query) {
+	private void preProcession(List<SingleResult> documents) {
 		/*
 		 * construct vector, docFreq. docFreq.getKeys() should be same as
 		 * vector.getKeys() for all documents. tf set for every term.
 		 */
-		this.query = query;
+		List<SingleResult> fresh = new ArrayList<>();
 		for (SingleResult sr : documents) {
 			// accumulate from history
 			if (!history.add(sr.getUrl()))
 				continue;
-			Pattern regex = Pattern.compile("[\\s\\p{Punct}|]+", Pattern.UNICODE_CHARACTER_CLASS);
-			String[] content = regex.split((sr.getTitle() + " " + sr.getSummary()).toLowerCase());
-			
-			Term term = new Term();
-			term.setLength(content.length);
-			// term.tf word : frequency of word in single document
-			HashMap<String, Integer> tf = new HashMap<>();
-			term.setIsRelevant(sr.getIsRelevant());
-
 			// statics about relevant and non-relevant documents
 			if (sr.getIsRelevant())
 				this.dr_n++;
 			else
 				this.dnr_n++;
-
-			for (String word : content) {
-				if (!stop.contains(word)) {
-					// update inverted list
-					Integer freq = tf.get(word);
-					if (freq == null) {
-						tf.put(word, 1);
-					} else {
-						tf.put(word, freq + 1);
-					}
+			fresh.add(sr);
+		}
+		List<Term> added = new ArrayList<>(fresh.size());
+		long start = Metrics.start(), allocated = Metrics.allocated();
+		if (parallel != null && fresh.size() >= PARALLEL_MIN) {
+			ParallelTokenizer.Chunk[] chunks = parallel.tokenize(fresh, cache);
+			for (ParallelTokenizer.Chunk chunk : chunks) {
+				int[] global = new int[chunk.dictionary.size()];
+				Arrays.fill(global, -1);
+				for (int d = 0; d < chunk.lengths.length; d++) {
+					int length = ParallelTokenizer.merge(chunk, d, global, dictionary, counter);
+					added.add(newTerm(fresh.get(added.size()), length));
 				}
+				ParallelTokenizer.mergeDocFreq(chunk, global, dictionary);
 			}
+		} else {
+			for (SingleResult sr : fresh) {
+				// new words get their index in order of first seen
+				int length = tokenize(sr);
 
-			// unordered key sets here, the order is not determined by the order
-			// of input
-			for (String word : tf.keySet()) {
-				Integer freq = docFreq.get(word);
-				if (freq != null) {
-					docFreq.put(word, freq + 1);
-				} else {
-					docFreq.put(word, 1);
-					int idx = termToIdx.size();
-					termToIdx.put(word, idx);
-					idxToTerm.put(idx, word);
+				for (int k = 0; k < counter.size(); k++) {
+					dictionary.incDocFreq(counter.id(k));
 				}
+				added.add(newTerm(sr, length));
 			}
-			term.setTf(tf);
+		}
+		Metrics.stop(Metrics.Stage.TOKENIZE, start, allocated);
 
+		start = Metrics.start();
+		allocated = Metrics.allocated();
+		for (Term term : added) {
+			term.setWeights(tfVector(term));
+			// only the new document goes to the running sums, idf is applied in rocchio
+			rocchioState.addDocument(term.getWeights(), term.getIsRelevant());
 			terms.add(term);
+			if (index != null)
+				index(term.getUrl(), term.getIds(), term.getTf(), term.getIds().length, term.getLength());
 		}
+		Metrics.stop(Metrics.Stage.VECTORIZE, start, allocated);
+		evict();
+	}
+
+	/**
+	 * set up the query, its words are put in the dictionary if they are not in any document.
+	 * 
+	 * @param query query that contains all keywords, separated by white space.
+	 */
+	private void setQuery(String[] query) {
+		this.query = query;
 		// put the query item to the vector first.
 		for (String word : query) {
-			if (!termToIdx.containsKey(word)) {
-				int idx = termToIdx.size();
-				termToIdx.put(word, idx);
-				idxToTerm.put(idx, word);
-				docFreq.put(word, 1);
+			if (dictionary.find(word) < 0) {
+				dictionary.incDocFreq(dictionary.intern(word));
 			}
 		}
 	}
 
+	private boolean overLimit(int docs) {
+		return (maxDocs > 0 && docs > maxDocs) || (maxTerms > 0 && dictionary.live() - queryOnly() > maxTerms);
+	}
+
 	/**
-	 * Compute the size of vector that modeled in vector space model.
-	 * 
-	 * @return size of terms.
+	 * @return words of the query that no document kept has, they don't count against maxTerms.
 	 */
-	private int getVectorSize() {
-		return termToIdx.size();
+	private int queryOnly() {
+		int n = 0;
+		for (int j = 0; query != null && j < query.length; j++) {
+			int id = dictionary.find(query[j]);
+			// a word given twice counts once
+			if (id >= 0 && rocchioState.documents(id) == 0 && queryPosition(id, j) == j)
+				n++;
+		}
+		return n;
 	}
 
-	private Term queryToTerm() {
-		Term q0 = new Term();
-		q0.setLength(query.length);
+	/**
+	 * @param before number of query words to look at.
+	 * @return position of the first of them with the id, before if none has it.
+	 */
+	private int queryPosition(int id, int before) {
+		for (int j = 0; query != null && j < before; j++) {
+			if (dictionary.find(query[j]) == id)
+				return j;
+		}
+		return before;
+	}
 
-		HashMap<String, Integer> tf = q0.getTf();
-		for (String term : query) {
-			if (!stop.contains(term)) {
-				if (tf.containsKey(term)) {
-					tf.put(term, tf.get(term) + 1);
-				} else {
-					tf.put(term, 1);
+	/**
+	 * forget documents until the history is under its limits.
+	 */
+	private void evict() {
+		if (!overLimit(terms.size()))
+			return;
+		Integer[] order = new Integer[terms.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		if (eviction == Eviction.CONTRIBUTION) {
+			double[] share = centroidShares();
+			Arrays.sort(order, (a, b) -> Double.compare(share[a], share[b]));
+		}
+		int wasRecorded = recorded;
+		for (int k = 0; k < order.length && overLimit(order.length - k); k++) {
+			int i = order[k];
+			forget(terms.get(i), i < wasRecorded);
+			terms.set(i, null);
+			if (i < wasRecorded)
+				recorded--;
+		}
+		terms.removeIf(Objects::isNull);
+	}
+
+	/**
+	 * share of every document in the weights of qm: its weight on every word, over the
+	 * number of documents of its group, times how much the word weighs in beta * dr - gamma * dnr.
+	 */
+	private double[] centroidShares() {
+		double[] idf = idfVector();
+		double drNum = rocchioState.getDrCount(), dnrNum = rocchioState.getDnrCount();
+		double[] share = new double[terms.size()];
+		for (int i = 0; i < share.length; i++) {
+			Term doc = terms.get(i);
+			double num = doc.getIsRelevant() ? drNum : dnrNum;
+			SparseVector logTf = doc.getWeights();
+			for (int k = 0; k < logTf.nnz(); k++) {
+				int idx = logTf.index(k);
+				double dr = drNum == 0 ? 0 : rocchioState.sum(true, idx) * idf[idx] / drNum;
+				double dnr = dnrNum == 0 ? 0 : rocchioState.sum(false, idx) * idf[idx] / dnrNum;
+				share[i] += logTf.value(k) * idf[idx] / num * Math.abs(beta * dr - gamma * dnr);
+			}
+		}
+		return share;
+	}
+
+	/**
+	 * take a document out of history, sums and df.
+	 * 
+	 * @param recordedDoc whether the term stats have its df already.
+	 */
+	private void forget(Term doc, boolean recordedDoc) {
+		history.remove(doc.getUrl());
+		rocchioState.removeDocument(doc.getWeights(), doc.getIsRelevant());
+		if (index != null)
+			unindex(doc.getUrl());
+		for (int id : doc.getIds()) {
+			if (!recordedDoc)
+				dictionary.decDocFreq(id);
+			if (dictionary.docFreq(id) == 0 && rocchioState.documents(id) == 0) {
+				// a word of the query keeps its id, with the df of 1 setQuery gives it
+				if (query != null && queryPosition(id, query.length) < query.length) {
+					dictionary.incDocFreq(id);
+					continue;
 				}
+				dictionary.remove(id);
+				// the id goes to another word, candidates with this one lose it
+				if (index != null)
+					index.clearTerm(id);
 			}
 		}
+	}
 
-		return q0;
+	/**
+	 * turn the words in counter into the Term of a new document.
+	 */
+	private Term newTerm(SingleResult sr, int length) {
+		// term.tf id : frequency of word in single document
+		Term term = counter.toTerm(length);
+		term.setUrl(sr.getUrl());
+		term.setIsRelevant(sr.getIsRelevant());
+		return term;
 	}
 
-	private double[] docVector(Term doc) {
-		double N = this.terms.size();
-		HashMap<String, Integer> tf = doc.getTf();
-		double[] v = new double[getVectorSize()];
-		for (String term : tf.keySet()) {
-			// v[termToIdx.get(term)] = (1 + Math.log10(tf.get(term))) *
-			// Math.log10(N / docFreq.get(term));
-			v[termToIdx.get(term)] = (1 + Math.log(tf.get(term))) * Math.log10(1 + N / docFreq.get(term));
-		}
-		return v;
+	/**
+	 * count the words of a document, from the cache if it was tokenized before.
+	 * 
+	 * @return the number of words in document before stop word elimination.
+	 */
+	private int tokenize(SingleResult sr) {
+		if (cache == null)
+			return tokenizer.tokenize(sr.getTitle(), sr.getSummary(), dictionary, counter);
+		ResultCache.Tokens tokens = cache.getTokens(sr.getUrl(), sr.getTitle(), sr.getSummary());
+		if (tokens != null)
+			return tokens.addTo(dictionary, counter);
+		int length = tokenizer.tokenize(sr.getTitle(), sr.getSummary(), dictionary, counter);
+		cache.putTokens(sr.getUrl(), sr.getTitle(), sr.getSummary(), ResultCache.Tokens.of(length, dictionary, counter));
+		return length;
 	}
 
 	/**
-	 * group terms to dr or dnr set up dr and dnr
+	 * Compute the size of vector that modeled in vector space model.
 	 * 
-	 * @param terms
+	 * @return size of terms.
 	 */
-	private void groupVector(List<Term> terms) {
-		if (terms == null) {
-			System.err.println("List<Term> hasn't been initialized.");
-			System.exit(2);
-		}
+	private int getVectorSize() {
+		return dictionary.size();
+	}
 
-		this.dr.clear();
-		this.dnr.clear();
-		for (Term term : terms) {
-			if (term.getIsRelevant()) {
-				this.dr.add(docVector(term));
-			} else {
-				this.dnr.add(docVector(term));
+	/**
+	 * tf-idf of the query into q0, as docVector of its Term.
+	 */
+	private SparseVector queryVector() {
+		for (String term : query) {
+			if (!stop.contains(term)) {
+				counter.add(dictionary.find(term));
 			}
 		}
+		counter.sort();
+		long N = (long) documents();
+		q0.clear();
+		for (int k = 0; k < counter.size(); k++) {
+			int id = counter.id(k);
+			q0.append(id, weighting.queryTf(counter.count(k)) * weighting.idf((long) docFreq(id), N));
+		}
+		counter.clear();
+		return q0;
 	}
-	
+
 	/**
-	 * Multiply a const to all elements in a vector.
+	 * tf weights of a document or the query, only the words in the document are stored.
 	 * 
-	 * @param vector Array of double numbers.
-	 * @param FACTOR Const factor.
+	 * @param doc document with ids in ascending order, the query if it has no url.
+	 * @return tf weight by term index, logarithm tf by default.
 	 */
-	private void vectorMulConst(double[] vector, final double FACTOR) {
-		for (int i = 0; i < vector.length; i++) {
-			vector[i] *= FACTOR;
+	private SparseVector tfVector(Term doc) {
+		int[] tf = doc.getTf();
+		double[] weights = new double[tf.length];
+		boolean query = doc.getUrl() == null;
+		for (int k = 0; k < tf.length; k++) {
+			weights[k] = query ? weighting.queryTf(tf[k]) : weighting.tf(tf[k], doc.getLength());
+		}
+		return new SparseVector(doc.getIds(), weights, tf.length);
+	}
+
+	SparseVector docVector(Term doc) {
+		long N = (long) documents();
+		SparseVector tf = doc.getWeights();
+		int[] idx = new int[tf.nnz()];
+		double[] v = new double[tf.nnz()];
+		for (int k = 0; k < tf.nnz(); k++) {
+			idx[k] = tf.index(k);
+			v[k] = tf.value(k) * weighting.idf((long) docFreq(idx[k]), N);
 		}
+		return new SparseVector(idx, v, tf.nnz());
 	}
 
 	/**
-	 * find the centroid from a set of vectors.
+	 * idf of every term in the vector space under the current document base.
 	 * 
-	 * @param d vector lists of weights
-	 * @return the centroid of these vectors
+	 * @return idf by term index.
 	 */
-	private double[] centroid(ArrayList<double[]> d) {
-		double num = d.size();
-		double[] ret = new double[getVectorSize()];
+	double[] idfVector() {
+		return idfVector(new double[getVectorSize()]);
+	}
 
-		for (double[] v : d) {
-			for (int i = 0; i < v.length; i++) {
-				ret[i] += v[i];
-			}
+	/**
+	 * @param idf array to fill, used if it is long enough.
+	 * @return idf by term index in its first getVectorSize() entries.
+	 */
+	private double[] idfVector(double[] idf) {
+		long N = (long) documents();
+		int n = getVectorSize();
+		if (idf.length < n)
+			idf = new double[Math.max(n, 2 * idf.length)];
+		for (int i = 0; i < n; i++) {
+			// removed ids have no df
+			idf[i] = dictionary.term(i) != null ? weighting.idf((long) docFreq(i), N) : 0;
 		}
+		return idf;
+	}
 
-		for (int i = 0; i < ret.length; i++) {
-			ret[i] /= num;
+	/**
+	 * @return N, documents of this session and of the term stats not recorded from it.
+	 * @throws UncheckedIOException if the term stats can't be read.
+	 */
+	private double documents() {
+		if (termStats == null)
+			return terms.size();
+		try {
+			return terms.size() - recorded + termStats.documents();
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
 		}
+	}
 
-		return ret;
+	/**
+	 * @return df of a term, in this session and in the term stats, documents recorded
+	 *         from this session only count in the term stats.
+	 * @throws UncheckedIOException if the term stats can't be read.
+	 */
+	private double docFreq(int id) {
+		if (termStats == null)
+			return dictionary.docFreq(id);
+		try {
+			return dictionary.docFreq(id) + termStats.docFreq(dictionary.term(id));
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
 	}
 
 	/**
@@ -296,25 +682,47 @@ public class RelevanceFeedback {
 	 * 
 	 * @return qm, which will be used for query expansion.
 	 */
-	private double[] rocchio(double[] q0) {
-		// set up dr, dnr
-		groupVector(terms);
-		double[] dr_centroid = centroid(dr);
-		double[] dnr_centroid = centroid(dnr);
+	private SparseVector rocchio(SparseVector q0) {
+		// centroids of dr, dnr from the running sums
+		int n = getVectorSize();
+		idfBuffer = idfVector(idfBuffer);
+		double[] idf = idfBuffer;
+		// once the groups cover most of the vocabulary, dense loops beat sorting and merging them
+		if (2 * (rocchioState.touched(true) + rocchioState.touched(false)) >= n)
+			return denseRocchio(q0, idf, n, KERNELS);
+		SparseVector dr_centroid = rocchioState.centroid(true, idf);
+		SparseVector dnr_centroid = rocchioState.centroid(false, idf);
 
-		vectorMulConst(q0, ALPHA);
-		vectorMulConst(dr_centroid, BETA);
-		vectorMulConst(dnr_centroid, GAMMA);
+		q0.scale(alpha);
+		dr_centroid.scale(beta);
+		dnr_centroid.scale(gamma);
 
-		for (int i = 0; i < q0.length; i++) {
-			q0[i] += (dr_centroid[i]) - dnr_centroid[i];
-			// ignore negative weights
-			if (q0[i] < 0)
-				q0[i] = 0;
-		}
+		// ignore negative weights
+		SparseVector qm = SparseVector.add(q0, SparseVector.add(dr_centroid, dnr_centroid, -1), 1).positive();
 
-		// debugQm(q0);
-		return q0;
+		// debugQm(qm);
+		return qm;
+	}
+
+	/**
+	 * Rocchio's algorithm over dense vectors of the whole vocabulary in one pass, into buffers
+	 * kept between rounds. Same result as the sparse one, in a vector filled again next round.
+	 * 
+	 * @param idf idf by term index.
+	 * @param n size of the vocabulary.
+	 * @return qm, which will be used for query expansion.
+	 */
+	SparseVector denseRocchio(SparseVector q0, double[] idf, int n, DenseKernels kernels) {
+		if (queryBuffer.length < n) {
+			queryBuffer = new double[Math.max(n, 2 * queryBuffer.length)];
+			qmBuffer = new double[queryBuffer.length];
+		}
+		q0.addTo(queryBuffer, alpha);
+		rocchioState.rocchio(queryBuffer, idf, beta, gamma, qmBuffer, n, kernels);
+		for (int k = 0; k < q0.nnz(); k++) {
+			queryBuffer[q0.index(k)] = 0;
+		}
+		return qmVector.setPositive(qmBuffer, n);
 	}
 
 	/**
@@ -323,78 +731,109 @@ public class RelevanceFeedback {
 	 * @param qm
 	 *            query weight vector
 	 */
-	private void debugQm(double[] qm) {
-		for (int i = 0; i < qm.length; i++) {
-			String k = idxToTerm.get(i);
-			double v = qm[i];
-			if (v != .0)
-				System.err.printf("%-18s: %11f; Freq: %5d\n", k, qm[i], docFreq.get(k));
+	private void debugQm(SparseVector qm) {
+		for (int k = 0; k < qm.nnz(); k++) {
+			int idx = qm.index(k);
+			System.err.printf("%-18s: %11f; Freq: %5d\n", dictionary.term(idx), qm.value(k), dictionary.docFreq(idx));
 		}
 
 		System.err.printf("Accumulate: %5d\n", terms.size());
 	}
 
 	/**
-	 * return at most 2 words with highest weights except the keywords.
+	 * return the query with the words of highest weights except the keywords.
 	 * 
-	 * @param qm Optimized query vector.
-	 * @return New query that expands at most 2 words.
+	 * @param qm Optimized query vector, not changed.
+	 * @param number number of words to add.
+	 * @return New query that expands at most number words.
 	 */
-	private String expand(double[] qm, int number) {
-		if (qm.length < 2)
-			return idxToTerm.get(0);
+	private ExpansionResult expand(SparseVector qm, int number) {
 		List<QueryExpansion> queries = new ArrayList<>();
-		for (String q : query) {
+		int[] queryIdx = new int[query.length];
+		for (int j = 0; j < query.length; j++) {
+			String q = query[j];
 			// except the query word.
 			Double penalty = markovPenalty.get(q);
 			if (penalty == null) {
 				markovPenalty.put(q, 1.0);
 				penalty = 1.0;
 			}
-			queries.add(new QueryExpansion(q, qm[termToIdx.get(q)] * penalty));
-			qm[termToIdx.get(q)] = 0;
-		}
-		// biggest weight and second biggest weight
-		int fst = 0, snd = 1;
-		if (qm[0] < qm[1]) {
-			fst = 1;
-			snd = 0;
-		}
-		for (int i = 2; i < qm.length; i++) {
-			if (qm[i] > qm[fst]) {
-				snd = fst;
-				fst = i;
-			} else if (qm[i] > qm[snd]) {
-				snd = i;
-			}
+			int idx = dictionary.find(q);
+			queryIdx[j] = idx;
+			queries.add(new QueryExpansion(q, qm.get(idx) * penalty));
 		}
+		int[] ids = new int[number];
+		double[] weights = new double[number];
+		int found = topWords(qm, queryIdx, number, ids, weights);
 
-		double curPrecision = this.dr_n / (this.dr_n + this.dnr_n);
+		double curPrecision = getPrecision();
 		// System.err.println("dr: " + this.dr_n + " dnr: " + this.dnr_n);
-		double penalty = (curPrecision / this.lastPrecision) * curPrecision;
-		System.err.println("(-: Penalty factor for new word is " + penalty + " :-)");
-		String term = idxToTerm.get(fst);
-		markovPenalty.put(term, penalty);
-		queries.add(new QueryExpansion(term, qm[fst] * penalty));
-		if (number == 2) {
-			term = idxToTerm.get(snd);
-			markovPenalty.put(term, penalty);
-			queries.add(new QueryExpansion(term, qm[snd] * penalty));
+		// nothing new judged gives no precision to decay by, and a last precision of 0 no ratio
+		boolean judged = getJudged() > 0;
+		double penalty = !judged ? 1 : this.lastPrecision == 0 ? curPrecision
+				: (curPrecision / this.lastPrecision) * curPrecision;
+		String[] added = new String[found];
+		for (int k = 0; k < found; k++) {
+			added[k] = dictionary.term(ids[k]);
+			markovPenalty.put(added[k], penalty);
+			queries.add(new QueryExpansion(added[k], weights[k] * penalty));
 		}
 
 		Collections.sort(queries);
 		// debugSortOrder(queries);
 
-		String next = "";
-		for (QueryExpansion qe : queries) {
-			next += qe.query + " ";
+		String[] terms = new String[queries.size()];
+		double[] termWeights = new double[queries.size()];
+		for (int k = 0; k < terms.length; k++) {
+			terms[k] = queries.get(k).query;
+			termWeights[k] = queries.get(k).weight;
 		}
 		// set cur for next round.
-		this.lastPrecision = curPrecision;
+		if (judged)
+			this.lastPrecision = curPrecision;
 		// reset the sets of dr and dnr to zero for next round.
 		this.dr_n = 0;
 		this.dnr_n = 0;
-		return next;
+		return new ExpansionResult(terms, termWeights, added, penalty, curPrecision);
+	}
+
+	/**
+	 * find the words with the biggest weights in qm except the query words, best first.
+	 * qm only keeps positive weights, if there are not enough of them the first words
+	 * with zero weight follow.
+	 * 
+	 * @param qm Optimized query vector.
+	 * @param queryIdx indices of the query words, never returned.
+	 * @param k number of words wanted.
+	 * @param ids filled with the indices of the words.
+	 * @param weights filled with their weights in qm.
+	 * @return number of words found, less than k only if the vocabulary is too small.
+	 */
+	int topWords(SparseVector qm, int[] queryIdx, int k, int[] ids, double[] weights) {
+		TopK top = new TopK(k, tieBreak == TieBreak.ALPHABETICAL
+				? (a, b) -> dictionary.term(a).compareTo(dictionary.term(b))
+				: TopK.LOWER_ID);
+		for (int j = 0; j < qm.nnz(); j++) {
+			int i = qm.index(j);
+			if (!contains(queryIdx, i))
+				top.offer(i, qm.value(j));
+		}
+		if (top.size() < k) {
+			// not enough positive weights, take the first words with zero weight.
+			for (int i = 0; i < getVectorSize() && top.size() < k; i++) {
+				if (!contains(queryIdx, i) && dictionary.term(i) != null && qm.get(i) == 0)
+					top.offer(i, 0);
+			}
+		}
+		return top.drain(ids, weights);
+	}
+
+	private static boolean contains(int[] ids, int id) {
+		for (int i : ids) {
+			if (i == id)
+				return true;
+		}
+		return false;
 	}
 
 	private void debugSortOrder(List<QueryExpansion> qes) {
@@ -415,8 +854,176 @@ public class RelevanceFeedback {
 	 * @return New query that contains all sorted terms.
 	 */
 	public String queryExpansion(int number, List<SingleResult> documents, String[] query) {
-		preProcession(documents, query);
-		return expand(rocchio(docVector(queryToTerm())), number);
+		addJudgments(documents);
+		return queryExpansion(number, query);
+	}
+
+	/**
+	 * Same as queryExpansion, with the documents judged so far, see addJudgment.
+	 * 
+	 * @param number Number of new terms wanted to add to the query.
+	 * @param query Array of terms in the last query.
+	 * @return New query that contains all sorted terms.
+	 */
+	public String queryExpansion(int number, String[] query) {
+		ExpansionResult result = expansion(number, query);
+		if (verbose)
+			System.err.println("(-: Penalty factor for new word is " + result.getPenalty() + " :-)");
+		return result.getQuery();
+	}
+
+	/**
+	 * Same as queryExpansion, but gives the terms, weights and penalty and prints nothing.
+	 * 
+	 * @param number Number of new terms wanted to add to the query.
+	 * @param documents List of documents in the last search.
+	 * @param query Array of terms in the last query.
+	 * @return the expansion of this round.
+	 */
+	public ExpansionResult expansion(int number, List<SingleResult> documents, String[] query) {
+		addJudgments(documents);
+		return expansion(number, query);
+	}
+
+	/**
+	 * Expand the query with the documents judged so far, see addJudgment.
+	 * The precision of the round is over the documents judged since the last expansion.
+	 * 
+	 * @param number Number of new terms wanted to add to the query.
+	 * @param query Array of terms in the last query.
+	 * @return the expansion of this round.
+	 */
+	public ExpansionResult expansion(int number, String[] query) {
+		setQuery(query);
+		long start = Metrics.start(), allocated = Metrics.allocated();
+		SparseVector qm = rocchio(queryVector());
+		lastQm = qm;
+		if (lastQmWords.length < qm.nnz())
+			lastQmWords = new String[Math.max(qm.nnz(), 2 * lastQmWords.length)];
+		for (int j = 0; j < qm.nnz(); j++) {
+			lastQmWords[j] = dictionary.term(qm.index(j));
+		}
+		Metrics.stop(Metrics.Stage.ROCCHIO, start, allocated);
+		start = Metrics.start();
+		allocated = Metrics.allocated();
+		ExpansionResult result = expand(qm, number);
+		Metrics.stop(Metrics.Stage.EXPAND, start, allocated);
+		return result;
+	}
+
+	/**
+	 * Index results that are not judged, e.g. the rest of a big pool or results of the cache,
+	 * so rank orders them with the documents. They don't count in the feedback, and a candidate
+	 * judged later is indexed as the document. Only the words of the dictionary are kept, the
+	 * others have no weight in qm.
+	 * 
+	 * @param results results to rank, the ones indexed before are skipped.
+	 */
+	public void addCandidates(List<SingleResult> results) {
+		buildIndex();
+		TermDictionary words = new TermDictionary();
+		TermCounter tf = new TermCounter();
+		int[] ids = new int[16], counts = new int[16];
+		for (SingleResult sr : results) {
+			if (indexed.containsKey(sr.getUrl()))
+				continue;
+			ResultCache.Tokens tokens = cache == null ? null
+					: cache.getTokens(sr.getUrl(), sr.getTitle(), sr.getSummary());
+			int length = tokens != null ? tokens.addTo(words, tf)
+					: tokenizer.tokenize(sr.getTitle(), sr.getSummary(), words, tf);
+			if (tf.size() > ids.length) {
+				ids = new int[tf.size()];
+				counts = new int[tf.size()];
+			}
+			int n = 0;
+			for (int k = 0; k < tf.size(); k++) {
+				int id = dictionary.find(words.term(tf.id(k)));
+				if (id >= 0) {
+					ids[n] = id;
+					counts[n++] = tf.count(k);
+				}
+			}
+			index(sr.getUrl(), ids, counts, n, length);
+			tf.clear();
+			words.clear();
+		}
+	}
+
+	/**
+	 * Rank the documents and candidates locally by the query of the last expansion, instead
+	 * of searching again. The score is the dot product of qm with the tf-idf of a document.
+	 * 
+	 * @param k number of results wanted.
+	 * @return urls of the best k, best first, empty before the first expansion.
+	 */
+	public List<String> rank(int k) {
+		List<String> ranked = new ArrayList<>();
+		if (lastQm == null)
+			return ranked;
+		buildIndex();
+		// idf goes to the query, the postings only keep tf
+		double[] idf = idfVector();
+		int[] ids = new int[lastQm.nnz()];
+		double[] weights = new double[lastQm.nnz()];
+		int n = 0;
+		for (int j = 0; j < lastQm.nnz(); j++) {
+			int id = lastQm.index(j);
+			// words forgotten since have no weight
+			if (id < idf.length && lastQmWords[j].equals(dictionary.term(id))) {
+				ids[n] = id;
+				weights[n++] = lastQm.value(j) * idf[id];
+			}
+		}
+		SparseVector query = new SparseVector(ids, weights, n);
+		k = Math.min(k, index.size());
+		int[] docs = new int[k];
+		double[] scores = new double[k];
+		int found = index.search(query, weighting, k, docs, scores);
+		for (int i = 0; i < found; i++) {
+			ranked.add(indexedUrls.get(docs[i]));
+		}
+		return ranked;
+	}
+
+	/**
+	 * index every document kept, the index is updated with them from now on.
+	 */
+	private void buildIndex() {
+		if (index != null)
+			return;
+		index = new InvertedIndex();
+		indexed = new HashMap<>();
+		indexedUrls = new ArrayList<>();
+		for (Term term : terms) {
+			index(term.getUrl(), term.getIds(), term.getTf(), term.getIds().length, term.getLength());
+		}
+	}
+
+	private void index(String url, int[] ids, int[] tf, int n, int length) {
+		unindex(url); // a candidate judged now
+		int doc = index.add(ids, tf, n, length);
+		indexed.put(url, doc);
+		indexedUrls.add(url);
+	}
+
+	private void unindex(String url) {
+		Integer doc = indexed.remove(url);
+		if (doc == null)
+			return;
+		indexedUrls.set(doc, null);
+		int[] remap = index.remove(doc);
+		if (remap == null)
+			return;
+		// the index numbered its documents again, without the removed ones
+		List<String> urls = new ArrayList<>(index.size());
+		for (int old = 0; old < remap.length; old++) {
+			if (remap[old] >= 0) {
+				String kept = indexedUrls.get(old);
+				indexed.put(kept, remap[old]);
+				urls.add(kept);
+			}
+		}
+		indexedUrls = urls;
 	}
 
 }
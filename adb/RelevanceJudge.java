@@ -0,0 +1,21 @@
+package adb;
+
+import java.io.IOException;
+
+/**
+ * Interface RelevanceJudge: Who decides whether a result is relevant.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public interface RelevanceJudge {
+
+	/**
+	 * Judge one result of the current round.
+	 * 
+	 * @param currentResult Current result number, starts from 1.
+	 * @param singleResult Current result.
+	 * @return The document is relevant to the desired query or not.
+	 * @throws IOException
+	 */
+	boolean isRelevant(int currentResult, SingleResult singleResult) throws IOException;
+}
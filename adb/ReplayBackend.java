@@ -0,0 +1,58 @@
+package adb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Class ReplayBackend: Serve the results of recorded rounds instead of searching.
+ * A query that was recorded gets its recorded results, any other query gets a recorded
+ * round picked by its hash, so a session can go on even if it expands differently, and
+ * the same query gets the same results whatever was searched before, prefetches included.
+ * For pools bigger than a recorded round, the results of the rounds after it follow.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public class ReplayBackend implements SearchBackend {
+	private final List<Transcript.Round> rounds;
+	private final HashMap<String, Integer> byQuery; // recorded query : index of its round
+	private int results; // results of a search, 0 for those of one round
+
+	/**
+	 * @param rounds recorded rounds, not empty.
+	 */
+	public ReplayBackend(List<Transcript.Round> rounds) {
+		this.rounds = rounds;
+		byQuery = new HashMap<>();
+		for (int i = 0; i < rounds.size(); i++) {
+			byQuery.putIfAbsent(rounds.get(i).getQuery(), i);
+		}
+	}
+
+	/**
+	 * @param results results of a search, taken from the next rounds too, 0 for those of one round.
+	 */
+	public void setResults(int results) {
+		this.results = results;
+	}
+
+	@Override
+	public List<SingleResult> search(String query) {
+		Integer first = byQuery.get(query.trim());
+		if (first == null)
+			first = Math.floorMod(query.trim().hashCode(), rounds.size());
+		// every session judges its own copies
+		List<SingleResult> results = new ArrayList<>();
+		HashSet<String> urls = new HashSet<>();
+		for (int i = 0; i == 0 || (i < rounds.size() && results.size() < this.results); i++) {
+			for (SingleResult sr : rounds.get((first + i) % rounds.size()).getResults()) {
+				// the first round as recorded, the next ones only add urls not seen yet
+				boolean fresh = urls.add(sr.getUrl());
+				if (i == 0 || (fresh && results.size() < this.results))
+					results.add(new SingleResult(sr.getUrl(), sr.getTitle(), sr.getSummary()));
+			}
+		}
+		return results;
+	}
+}
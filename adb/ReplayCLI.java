@@ -0,0 +1,240 @@
+package adb;
+
+import java.net.http.HttpClient;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class ReplayCLI: Run recorded sessions headless to measure the throughput of the whole loop.
+ * Every session replays one recorded session of the transcript, the results come from a
+ * ReplayBackend directly, or through a StandInServer with --http so HTTP and xml parsing count too.
+ * --latency=<ms> makes the server answer slowly like a remote search, --think=<ms> makes every
+ * judgment slow like a user, and --prefetch fetches the guessed next round while judging,
+ * to see how much of the latency it hides. --cache=<dir> keeps results, judgments and words
+ * in a ResultCache, so a second run shows warm sessions. --stats=<file> gives idf over all
+ * sessions from a TermStatsStore. --max-docs=<n>, --max-terms=<n> and --evict=age|contribution
+ * bound the history of every session. --expand=<bad>,<good> sets how many words a round adds after
+ * bad and good feedback, and --ties=first_seen|alphabetical which of the same weight go first.
+ * --weighting=log|bm25|pivoted[:<parameters>] picks the TermWeighting and --rocchio=<alpha>,<beta>,<gamma>
+ * the constants of qm. --results=<k> judges k results a round, the recorded rounds that follow fill the pool, and with
+ * --http they come in pages of 10 fetched at once.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public class ReplayCLI {
+	private static final int MAX_ROUNDS = 20;
+	private static final long CACHE_BYTES = 64L << 20;
+	private static final int MAX_PENDING = 4; // prefetches in flight per session, two guesses of two judgments
+
+	public static void main(String[] args) throws Exception {
+		List<String> positional = new ArrayList<>();
+		boolean http = false, prefetch = false;
+		long latency = 0, think = 0;
+		String cacheDir = null, statsFile = null;
+		int maxDocs = 0, maxTerms = 0;
+		int results = FeedbackSession.TOP_QUERIES;
+		RelevanceFeedback.Eviction eviction = RelevanceFeedback.Eviction.AGE;
+		int badWords = 1, goodWords = 2;
+		RelevanceFeedback.TieBreak tieBreak = RelevanceFeedback.TieBreak.FIRST_SEEN;
+		TermWeighting termWeighting = TermWeighting.LOG_TF_IDF;
+		double[] abc = { RelevanceFeedback.ALPHA, RelevanceFeedback.BETA, RelevanceFeedback.GAMMA };
+		for (String arg : args) {
+			if (arg.equals("--http"))
+				http = true;
+			else if (arg.equals("--prefetch"))
+				prefetch = true;
+			else if (arg.startsWith("--latency="))
+				latency = Long.parseLong(arg.substring("--latency=".length()));
+			else if (arg.startsWith("--think="))
+				think = Long.parseLong(arg.substring("--think=".length()));
+			else if (arg.startsWith("--cache="))
+				cacheDir = arg.substring("--cache=".length());
+			else if (arg.startsWith("--stats="))
+				statsFile = arg.substring("--stats=".length());
+			else if (arg.startsWith("--max-docs="))
+				maxDocs = Integer.parseInt(arg.substring("--max-docs=".length()));
+			else if (arg.startsWith("--max-terms="))
+				maxTerms = Integer.parseInt(arg.substring("--max-terms=".length()));
+			else if (arg.startsWith("--evict="))
+				eviction = RelevanceFeedback.Eviction.valueOf(arg.substring("--evict=".length()).toUpperCase());
+			else if (arg.startsWith("--expand=")) {
+				String[] words = arg.substring("--expand=".length()).split(",");
+				badWords = Integer.parseInt(words[0]);
+				goodWords = Integer.parseInt(words[words.length - 1]);
+			} else if (arg.startsWith("--ties="))
+				tieBreak = RelevanceFeedback.TieBreak.valueOf(arg.substring("--ties=".length()).toUpperCase());
+			else if (arg.startsWith("--weighting="))
+				termWeighting = TermWeighting.parse(arg.substring("--weighting=".length()));
+			else if (arg.startsWith("--rocchio=")) {
+				try {
+					abc = QueryCLI.parseRocchio(arg.substring("--rocchio=".length()));
+				} catch (IllegalArgumentException ex) {
+					System.err.println(ex.getMessage());
+					System.exit(1);
+				}
+			} else if (arg.startsWith("--results="))
+				results = Integer.parseInt(arg.substring("--results=".length()));
+			else
+				positional.add(arg);
+		}
+		if (positional.size() < 3) {
+			System.err.println("Usage: ReplayCLI <transcript> <precision> <sessions> [threads] [--http]"
+					+ " [--latency=<ms>] [--think=<ms>] [--prefetch] [--cache=<dir>]"
+					+ " [--stats=<file>] [--max-docs=<n>] [--max-terms=<n>] [--evict=age|contribution]"
+					+ " [--expand=<bad>,<good>] [--ties=first_seen|alphabetical] [--results=<k>]"
+					+ " [--weighting=log|bm25|pivoted[:<parameters>]] [--rocchio=<alpha>,<beta>,<gamma>]");
+			System.exit(1);
+		}
+		if (cacheDir != null && !http) {
+			// every session has its own ReplayBackend, the same query can get other results
+			System.err.println("--cache needs --http, the results of a query must be the same for every session");
+			System.exit(1);
+		}
+		List<List<Transcript.Round>> recorded = Transcript.read(Paths.get(positional.get(0)));
+		recorded.removeIf(rounds -> rounds.isEmpty() || rounds.get(0).getResults().isEmpty());
+		if (recorded.isEmpty()) {
+			System.err.println("No recorded round in " + positional.get(0));
+			System.exit(1);
+		}
+		float targetPrecision = Float.parseFloat(positional.get(1));
+		int sessions = Integer.parseInt(positional.get(2));
+		int threads = positional.size() > 3 ? Integer.parseInt(positional.get(3)) : 1;
+
+		List<Transcript.Round> all = new ArrayList<>();
+		for (List<Transcript.Round> rounds : recorded) {
+			all.addAll(rounds);
+		}
+		int pages = (results + BingSearchBackend.PAGE_SIZE - 1) / BingSearchBackend.PAGE_SIZE;
+		StandInServer server = null;
+		if (http) {
+			ReplayBackend replay = new ReplayBackend(all);
+			if (results > FeedbackSession.TOP_QUERIES)
+				replay.setResults(results); // rounds as recorded otherwise
+			// stale prefetches keep a server thread busy until they are answered, every page of them
+			int serverThreads = prefetch ? threads * (2 * results + 1) * pages : threads * pages;
+			server = new StandInServer(replay, serverThreads);
+			server.setLatency(latency);
+			server.start();
+		}
+
+		// one client for every session, so they share its connections
+		HttpClient client = http ? BingSearchBackend.newClient(Duration.ofSeconds(5)) : null;
+		ResultCache cache = cacheDir == null ? null : new ResultCache(Paths.get(cacheDir), CACHE_BYTES);
+		TermStatsStore termStats = statsFile == null ? null : TermStatsStore.openWriter(Paths.get(statsFile));
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		// the fetches in flight and the two guesses of every session
+		ExecutorService prefetchExecutor = prefetch ? Executors.newFixedThreadPool(threads * (MAX_PENDING + 2)) : null;
+		long thinkMillis = think;
+		int docLimit = maxDocs, termLimit = maxTerms;
+		RelevanceFeedback.Eviction evictBy = eviction;
+		int bad = badWords, good = goodWords, k = results;
+		RelevanceFeedback.TieBreak ties = tieBreak;
+		TermWeighting weighting = termWeighting;
+		double[] rocchio = abc;
+		AtomicInteger hits = new AtomicInteger(), searches = new AtomicInteger();
+		List<Future<Integer>> rounds = new ArrayList<>();
+		int totalRounds = 0, reached = 0;
+		long start = System.nanoTime();
+		try {
+			for (int i = 0; i < sessions; i++) {
+				List<Transcript.Round> session = recorded.get(i % recorded.size());
+				// judgments differ between recorded sessions of the same query
+				String need = "session " + i % recorded.size();
+				String endpoint = http ? server.getEndpoint() : null;
+				rounds.add(executor.submit(() -> {
+					SearchBackend backend;
+					if (endpoint != null) {
+						BingSearchBackend bing = new BingSearchBackend("replay", endpoint, client);
+						bing.setPages(pages);
+						backend = bing;
+					} else {
+						ReplayBackend replay = new ReplayBackend(session);
+						if (k > FeedbackSession.TOP_QUERIES) {
+							// one session seldom has k results of its own
+							replay = new ReplayBackend(all);
+							replay.setResults(k);
+						}
+						backend = replay;
+					}
+					if (cache != null)
+						backend = new CachingSearchBackend(backend, cache, k);
+					Prefetcher prefetcher = null;
+					if (prefetchExecutor != null)
+						prefetcher = new Prefetcher(backend, prefetchExecutor, MAX_PENDING);
+					try {
+						FeedbackSession feedback = new FeedbackSession(backend, judge(session, thinkMillis),
+								targetPrecision);
+						feedback.setMaxRounds(MAX_ROUNDS);
+						feedback.setPrefetcher(prefetcher);
+						feedback.setCache(cache);
+						feedback.setNeed(need);
+						feedback.setTermStats(termStats);
+						feedback.setHistoryLimit(docLimit, termLimit, evictBy);
+						feedback.setExpansion(bad, good, ties);
+						feedback.setWeighting(weighting, rocchio[0], rocchio[1], rocchio[2]);
+						feedback.setResultsPerRound(k);
+						int exit = feedback.run(session.get(0).getQuery());
+						return exit == 0 ? feedback.getRound() : -feedback.getRound();
+					} finally {
+						if (prefetcher != null) {
+							hits.addAndGet(prefetcher.getHits());
+							searches.addAndGet(prefetcher.getSearches());
+						}
+					}
+				}));
+			}
+			for (Future<Integer> future : rounds) {
+				int round = future.get();
+				totalRounds += Math.abs(round);
+				if (round > 0)
+					reached++;
+			}
+		} finally {
+			executor.shutdownNow();
+			if (prefetchExecutor != null)
+				prefetchExecutor.shutdownNow();
+			if (server != null)
+				server.stop();
+			if (termStats != null)
+				termStats.close();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		System.out.printf("Sessions    = %d (%d reached precision %.2f)%n", sessions, reached, targetPrecision);
+		System.out.printf("Rounds      = %d%n", totalRounds);
+		System.out.printf("Elapsed     = %.3f s%n", seconds);
+		System.out.printf("Throughput  = %.1f sessions/s, %.1f rounds/s%n", sessions / seconds, totalRounds / seconds);
+		if (prefetch)
+			System.out.printf("Prefetched  = %d of %d searches%n", hits.get(), searches.get());
+		if (termStats != null)
+			System.out.printf("Term stats  = %d documents, %d terms%n", termStats.documents(), termStats.size());
+		if (cache != null)
+			System.out.printf("Cache       = %d hits, %d misses, %d bytes%n", cache.getHits(), cache.getMisses(),
+					cache.getBytes());
+		if (Metrics.isEnabled())
+			System.out.print(Metrics.get().summary());
+	}
+
+	/**
+	 * @return the recorded judgments, taking think milliseconds each.
+	 */
+	private static RelevanceJudge judge(List<Transcript.Round> rounds, long think) {
+		RelevanceJudge judge = new ReplayJudge(rounds);
+		if (think <= 0)
+			return judge;
+		return (currentResult, sr) -> {
+			try {
+				Thread.sleep(think);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			return judge.isRelevant(currentResult, sr);
+		};
+	}
+}
@@ -0,0 +1,31 @@
+package adb;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Class ReplayJudge: Judge results by the relevance recorded for their url.
+ * A url that was never recorded is not relevant.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public class ReplayJudge implements RelevanceJudge {
+	private final HashMap<String, Boolean> judgments; // url : relevant
+
+	/**
+	 * @param rounds recorded rounds, a later judgment of the same url wins.
+	 */
+	public ReplayJudge(List<Transcript.Round> rounds) {
+		judgments = new HashMap<>();
+		for (Transcript.Round round : rounds) {
+			for (SingleResult sr : round.getResults()) {
+				judgments.put(sr.getUrl(), sr.getIsRelevant());
+			}
+		}
+	}
+
+	@Override
+	public boolean isRelevant(int currentResult, SingleResult singleResult) {
+		return Boolean.TRUE.equals(judgments.get(singleResult.getUrl()));
+	}
+}
@@ -0,0 +1,516 @@
+package adb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Class ResultCache: Results, tokens and judgments kept on disk between sessions.
+ * Every entry is one small binary file in the cache directory:
+ * r- the parsed results of a normalized query,
+ * t- the words of one document (url, title and summary) after stop word elimination,
+ * j- the judgments of the urls seen for one information need (normalized first query), a
+ * record appended per judgment, compacted when it is loaded with urls judged twice.
+ * Files are evicted least recently used first when they take more than the size limit,
+ * the order survives restarts through the modified time of the files.
+ * A file that can't be read or written is a miss, the cache never fails a session; it is
+ * removed unless the read was interrupted. Thread safe.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public class ResultCache {
+	private static final int MAGIC = 0x41444243; // "ADBC"
+	private static final int VERSION = 2; // 2: judgments are records up to the end of the file
+	private static final String RESULTS = "r-";
+	private static final String TOKENS = "t-";
+	private static final String JUDGMENTS = "j-";
+	private static final int MAX_LENGTH = 1 << 24;
+	private static final int MAX_NEEDS = 16; // information needs whose judgments stay loaded
+
+	private final Path dir;
+	private final long maxBytes;
+	private final LinkedHashMap<String, Long> files; // file name : bytes, least recently used first
+	private final LinkedHashMap<String, Map<String, Boolean>> judgments; // need : url : relevance, loaded
+	private long bytes; // bytes of all files
+	private int hits;
+	private int misses;
+
+	/**
+	 * Words of one document, as the Tokenizer gave them.
+	 */
+	public static class Tokens {
+		private final int length; // number of words before stop word elimination
+		private final String[] words; // different words, in order of first seen
+		private final int[] tf; // frequency of words[k]
+
+		Tokens(int length, String[] words, int[] tf) {
+			this.length = length;
+			this.words = words;
+			this.tf = tf;
+		}
+
+		/**
+		 * Take the words counted for the current document, before counter.toTerm.
+		 *
+		 * @param length the number of words in document before stop word elimination.
+		 * @param dictionary dictionary of the ids.
+		 * @param counter tf of the document.
+		 * @return words of the document.
+		 */
+		static Tokens of(int length, TermDictionary dictionary, TermCounter counter) {
+			String[] words = new String[counter.size()];
+			int[] tf = new int[counter.size()];
+			for (int k = 0; k < words.length; k++) {
+				words[k] = dictionary.term(counter.id(k));
+				tf[k] = counter.count(k);
+			}
+			return new Tokens(length, words, tf);
+		}
+
+		/**
+		 * Count the words like the Tokenizer does, new words get ids in the same order.
+		 *
+		 * @param dictionary every word is interned here.
+		 * @param counter tf of the document.
+		 * @return the number of words in document before stop word elimination.
+		 */
+		int addTo(TermDictionary dictionary, TermCounter counter) {
+			for (int k = 0; k < words.length; k++) {
+				counter.add(dictionary.intern(words[k]), tf[k]);
+			}
+			return length;
+		}
+	}
+
+	/**
+	 * @param dir directory of the cache, created if missing.
+	 * @param maxBytes size limit of all files.
+	 * @throws IOException
+	 */
+	public ResultCache(Path dir, long maxBytes) throws IOException {
+		this.dir = dir;
+		this.maxBytes = maxBytes;
+		files = new LinkedHashMap<>(16, 0.75f, true);
+		judgments = new LinkedHashMap<String, Map<String, Boolean>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Map<String, Boolean>> eldest) {
+				// loaded again from its file when needed
+				return size() > MAX_NEEDS;
+			}
+		};
+		Files.createDirectories(dir);
+		File[] existing = dir.toFile().listFiles(
+				file -> file.isFile() && !file.getName().endsWith(".tmp") && (file.getName().startsWith(RESULTS)
+						|| file.getName().startsWith(TOKENS) || file.getName().startsWith(JUDGMENTS)));
+		Arrays.sort(existing, Comparator.comparingLong(File::lastModified));
+		for (File file : existing) {
+			files.put(file.getName(), file.length());
+			bytes += file.length();
+		}
+		evict();
+	}
+
+	/**
+	 * @param query query as typed or expanded.
+	 * @return lower case query with single spaces, the key of its results.
+	 */
+	public static String normalize(String query) {
+		return String.join(" ", query.trim().toLowerCase(Locale.ROOT).split("\\s+"));
+	}
+
+	/**
+	 * @param query query of the results.
+	 * @return new copies of the cached results, not judged, null if not cached.
+	 */
+	public synchronized List<SingleResult> getResults(String query) {
+		return getResults(query, 0);
+	}
+
+	/**
+	 * @param query query of the results.
+	 * @param minimum results needed, fewer cached is a miss.
+	 * @return new copies of the cached results, not judged, null if not cached.
+	 */
+	public synchronized List<SingleResult> getResults(String query, int minimum) {
+		String key = normalize(query);
+		try (DataInputStream in = open(RESULTS + DigestUtils.sha1Hex(key))) {
+			if (in == null || !readString(in).equals(key))
+				return miss();
+			int n = readLength(in);
+			// cached by a session that judged fewer results a round
+			if (n < minimum)
+				return miss();
+			List<SingleResult> results = new ArrayList<>(n);
+			for (int i = 0; i < n; i++) {
+				results.add(new SingleResult(readString(in), readString(in), readString(in)));
+			}
+			hits++;
+			return results;
+		} catch (IOException ex) {
+			drop(RESULTS + DigestUtils.sha1Hex(key), ex);
+			return miss();
+		}
+	}
+
+	/**
+	 * @param query query of the results.
+	 * @param results results of the query, relevance is not kept.
+	 */
+	public synchronized void putResults(String query, List<SingleResult> results) {
+		String key = normalize(query);
+		try (Writer out = new Writer(RESULTS + DigestUtils.sha1Hex(key))) {
+			writeString(out.data, key);
+			writeVarint(out.data, results.size());
+			for (SingleResult sr : results) {
+				writeString(out.data, sr.getUrl());
+				writeString(out.data, sr.getTitle());
+				writeString(out.data, sr.getSummary());
+			}
+			out.commit();
+		} catch (IOException ex) {
+			// not cached
+		}
+	}
+
+	/**
+	 * @param url url of the document.
+	 * @param title title of the document.
+	 * @param summary summary of the document.
+	 * @return words of the document, null if not cached.
+	 */
+	public synchronized Tokens getTokens(String url, String title, String summary) {
+		String name = TOKENS + documentKey(url, title, summary);
+		try (DataInputStream in = open(name)) {
+			if (in == null)
+				return miss();
+			int length = readVarint(in);
+			int n = readLength(in);
+			String[] words = new String[n];
+			int[] tf = new int[n];
+			for (int k = 0; k < n; k++) {
+				words[k] = readString(in);
+				tf[k] = readLength(in);
+			}
+			hits++;
+			return new Tokens(length, words, tf);
+		} catch (IOException ex) {
+			drop(name, ex);
+			return miss();
+		}
+	}
+
+	/**
+	 * @param url url of the document.
+	 * @param title title of the document.
+	 * @param summary summary of the document.
+	 * @param tokens words of the document.
+	 */
+	public synchronized void putTokens(String url, String title, String summary, Tokens tokens) {
+		try (Writer out = new Writer(TOKENS + documentKey(url, title, summary))) {
+			writeVarint(out.data, tokens.length);
+			writeVarint(out.data, tokens.words.length);
+			for (int k = 0; k < tokens.words.length; k++) {
+				writeString(out.data, tokens.words[k]);
+				writeVarint(out.data, tokens.tf[k]);
+			}
+			out.commit();
+		} catch (IOException ex) {
+			// not cached
+		}
+	}
+
+	/**
+	 * @param need information need, the first query of the session.
+	 * @param url url of the result.
+	 * @return relevance given before, null if never judged.
+	 */
+	public synchronized Boolean getJudgment(String need, String url) {
+		Boolean relevant = judgments(need).get(url);
+		if (relevant == null)
+			misses++;
+		else
+			hits++;
+		return relevant;
+	}
+
+	/**
+	 * @param need information need, the first query of the session.
+	 * @param url url of the result.
+	 * @param relevant relevance given by the judge.
+	 */
+	public synchronized void putJudgment(String need, String url, boolean relevant) {
+		String key = normalize(need);
+		Map<String, Boolean> judged = judgments(key);
+		judged.put(url, relevant);
+		String name = JUDGMENTS + DigestUtils.sha1Hex(key);
+		try {
+			if (files.get(name) == null) {
+				writeJudgments(name, key, judged);
+				return;
+			}
+			ByteArrayOutputStream record = new ByteArrayOutputStream();
+			DataOutputStream data = new DataOutputStream(record);
+			writeString(data, url);
+			data.writeBoolean(relevant);
+			Files.write(dir.resolve(name), record.toByteArray(), StandardOpenOption.APPEND);
+			files.put(name, files.get(name) + record.size());
+			bytes += record.size();
+			evict();
+		} catch (IOException ex) {
+			// kept in memory only, the next load drops a broken record
+		}
+	}
+
+	private Map<String, Boolean> judgments(String need) {
+		String key = normalize(need);
+		Map<String, Boolean> judged = judgments.get(key);
+		if (judged != null) {
+			files.get(JUDGMENTS + DigestUtils.sha1Hex(key)); // recently used
+			return judged;
+		}
+		judged = new HashMap<>();
+		String name = JUDGMENTS + DigestUtils.sha1Hex(key);
+		int records = 0;
+		boolean broken = false;
+		try (DataInputStream in = open(name)) {
+			if (in != null && readString(in).equals(key)) {
+				// records up to the end of the file, a later one wins
+				for (;;) {
+					in.mark(1);
+					if (in.read() < 0)
+						break;
+					in.reset();
+					try {
+						judged.put(readString(in), in.readBoolean());
+						records++;
+					} catch (IOException ex) {
+						if (interrupted(ex))
+							throw ex;
+						// a record cut short by a crash, keep the ones before
+						broken = true;
+						break;
+					}
+				}
+			}
+		} catch (IOException ex) {
+			if (interrupted(ex)) {
+				// read again next time, a record put meanwhile is appended to the file
+				return new HashMap<>();
+			}
+			judged.clear();
+			records = 0;
+			remove(name);
+		}
+		if (broken || records > judged.size()) {
+			try {
+				writeJudgments(name, key, judged);
+			} catch (IOException ex) {
+				drop(name, ex);
+			}
+		}
+		judgments.put(key, judged);
+		return judged;
+	}
+
+	/**
+	 * Write the judgments of a need as a new file, one record per url.
+	 */
+	private void writeJudgments(String name, String key, Map<String, Boolean> judged) throws IOException {
+		try (Writer out = new Writer(name)) {
+			writeString(out.data, key);
+			for (Map.Entry<String, Boolean> entry : judged.entrySet()) {
+				writeString(out.data, entry.getKey());
+				out.data.writeBoolean(entry.getValue());
+			}
+			out.commit();
+		}
+	}
+
+	/**
+	 * @return lookups that found an entry.
+	 */
+	public synchronized int getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return lookups that found nothing.
+	 */
+	public synchronized int getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return bytes of all files.
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	private <T> T miss() {
+		misses++;
+		return null;
+	}
+
+	private static String documentKey(String url, String title, String summary) {
+		// a url whose snippet changed is a new document
+		return DigestUtils.sha1Hex(url + '\0' + title + '\0' + summary);
+	}
+
+	/**
+	 * @return stream after the header, null if there is no such file.
+	 */
+	private DataInputStream open(String name) throws IOException {
+		if (files.get(name) == null)
+			return null;
+		Path path = dir.resolve(name);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)));
+		if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+			in.close();
+			throw new IOException("not a cache file of this version: " + path);
+		}
+		Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+		return in;
+	}
+
+	/**
+	 * Remove a file that failed to read, unless the read was interrupted: an interrupt closes
+	 * the channel of a good file, e.g. under a cancelled fetch, and is only a miss.
+	 */
+	private void drop(String name, IOException ex) {
+		if (!interrupted(ex))
+			remove(name);
+	}
+
+	private static boolean interrupted(IOException ex) {
+		return ex instanceof ClosedByInterruptException || ex instanceof InterruptedIOException
+				|| Thread.currentThread().isInterrupted();
+	}
+
+	private void remove(String name) {
+		Long size = files.remove(name);
+		if (size != null)
+			bytes -= size;
+		try {
+			Files.deleteIfExists(dir.resolve(name));
+		} catch (IOException ex) {
+			// gone from the index anyway
+		}
+	}
+
+	private void evict() {
+		Iterator<String> eldest = files.keySet().iterator();
+		while (bytes > maxBytes && eldest.hasNext()) {
+			String name = eldest.next();
+			bytes -= files.get(name);
+			eldest.remove();
+			try {
+				Files.deleteIfExists(dir.resolve(name));
+			} catch (IOException ex) {
+				// gone from the index anyway
+			}
+		}
+	}
+
+	/**
+	 * Writes a new file next to its name, which replaces the old one on commit.
+	 */
+	private class Writer implements AutoCloseable {
+		private final String name;
+		private final Path tmp;
+		private final DataOutputStream data;
+		private boolean committed;
+
+		Writer(String name) throws IOException {
+			this.name = name;
+			tmp = dir.resolve(name + ".tmp");
+			data = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)));
+			data.writeInt(MAGIC);
+			data.writeByte(VERSION);
+		}
+
+		void commit() throws IOException {
+			data.close();
+			long size = Files.size(tmp);
+			Files.move(tmp, dir.resolve(name), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			committed = true;
+			Long old = files.put(name, size);
+			bytes += size - (old == null ? 0 : old);
+			evict();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!committed) {
+				data.close();
+				Files.deleteIfExists(tmp);
+			}
+		}
+	}
+
+	private static void writeVarint(DataOutputStream out, int value) throws IOException {
+		while ((value & ~0x7f) != 0) {
+			out.writeByte((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private static int readVarint(DataInputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("malformed varint");
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] utf8 = String.valueOf(s).getBytes(StandardCharsets.UTF_8);
+		writeVarint(out, utf8.length);
+		out.write(utf8);
+	}
+
+	/**
+	 * a count or a string length, a broken file must not make us allocate anything big.
+	 */
+	private static int readLength(DataInputStream in) throws IOException {
+		int length = readVarint(in);
+		if (length < 0 || length > MAX_LENGTH)
+			throw new IOException("malformed length " + length);
+		return length;
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] utf8 = new byte[readLength(in)];
+		in.readFully(utf8);
+		return new String(utf8, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,246 @@
+package adb;
+
+import java.util.Arrays;
+
+/**
+ * Class RocchioState: Running sums of the relevant and non-relevant document vectors.
+ * Only the logarithm tf part is accumulated, idf is applied when the centroid is taken,
+ * so a new round costs the new documents only, no matter how long the history is.
+ * The sums are dense by term index, the centroids only cover the terms seen in each group.
+ * A document can be taken out again, a term whose last document is gone leaves its group.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public class RocchioState {
+	private static final int INITIAL_CAPACITY = 64;
+
+	private double[] drSum; // sum of logarithm tf of relevant documents, by term index
+	private double[] dnrSum; // sum of logarithm tf of non-relevant documents, by term index
+	private int[] drDocs; // number of relevant documents with the term, by term index
+	private int[] dnrDocs; // number of non-relevant documents with the term, by term index
+	private int[] drTouched; // term indices with relevant documents
+	private int[] dnrTouched; // term indices with non-relevant documents
+	private int drTouchedSize;
+	private int dnrTouchedSize;
+	private int drCount; // number of relevant documents accumulated
+	private int dnrCount; // number of non-relevant documents accumulated
+
+	public RocchioState() {
+		drSum = new double[INITIAL_CAPACITY];
+		dnrSum = new double[INITIAL_CAPACITY];
+		drDocs = new int[INITIAL_CAPACITY];
+		dnrDocs = new int[INITIAL_CAPACITY];
+		drTouched = new int[INITIAL_CAPACITY];
+		dnrTouched = new int[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * @param other running sums to copy.
+	 */
+	public RocchioState(RocchioState other) {
+		drSum = other.drSum.clone();
+		dnrSum = other.dnrSum.clone();
+		drDocs = other.drDocs.clone();
+		dnrDocs = other.dnrDocs.clone();
+		drTouched = other.drTouched.clone();
+		dnrTouched = other.dnrTouched.clone();
+		drTouchedSize = other.drTouchedSize;
+		dnrTouchedSize = other.dnrTouchedSize;
+		drCount = other.drCount;
+		dnrCount = other.dnrCount;
+	}
+
+	/**
+	 * Accumulate one more document in its group.
+	 *
+	 * @param logTf logarithm tf of the document by term index, every weight is at least 1.
+	 * @param isRelevant whether the document is relevant.
+	 */
+	public void addDocument(SparseVector logTf, boolean isRelevant) {
+		if (logTf.nnz() > 0)
+			ensureCapacity(logTf.index(logTf.nnz() - 1) + 1);
+		double[] sum = isRelevant ? drSum : dnrSum;
+		int[] docs = isRelevant ? drDocs : dnrDocs;
+		for (int k = 0; k < logTf.nnz(); k++) {
+			int idx = logTf.index(k);
+			if (docs[idx]++ == 0)
+				touch(idx, isRelevant);
+			sum[idx] += logTf.value(k);
+		}
+		if (isRelevant)
+			drCount++;
+		else
+			dnrCount++;
+	}
+
+	/**
+	 * Take a document accumulated before out of its group.
+	 *
+	 * @param logTf logarithm tf of the document, as it was added.
+	 * @param isRelevant whether the document is relevant.
+	 */
+	public void removeDocument(SparseVector logTf, boolean isRelevant) {
+		double[] sum = isRelevant ? drSum : dnrSum;
+		int[] docs = isRelevant ? drDocs : dnrDocs;
+		for (int k = 0; k < logTf.nnz(); k++) {
+			int idx = logTf.index(k);
+			if (--docs[idx] == 0) {
+				sum[idx] = 0; // exactly, whatever rounding the sums collected
+				untouch(idx, isRelevant);
+			} else {
+				sum[idx] -= logTf.value(k);
+			}
+		}
+		if (isRelevant)
+			drCount--;
+		else
+			dnrCount--;
+	}
+
+	/**
+	 * find the centroid of relevant or non-relevant documents under the current idf.
+	 *
+	 * @param isRelevant which group to use.
+	 * @param idf idf of every term, by term index.
+	 * @return the centroid of the group, only terms seen in the group are stored.
+	 */
+	public SparseVector centroid(boolean isRelevant, double[] idf) {
+		double[] sum = isRelevant ? drSum : dnrSum;
+		double num = isRelevant ? drCount : dnrCount;
+		int n = isRelevant ? drTouchedSize : dnrTouchedSize; // none for an empty group, no 0 / 0
+		int[] idx = Arrays.copyOf(isRelevant ? drTouched : dnrTouched, n);
+		Arrays.sort(idx);
+
+		double[] ret = new double[n];
+		for (int k = 0; k < n; k++) {
+			ret[k] = sum[idx[k]] * idf[idx[k]];
+		}
+
+		for (int k = 0; k < n; k++) {
+			ret[k] /= num;
+		}
+
+		return new SparseVector(idx, ret, n);
+	}
+
+	/**
+	 * find the centroid of a group for every term index at once.
+	 *
+	 * @param isRelevant which group to use.
+	 * @param idf idf of every term, by term index.
+	 * @param out filled with the centroid by term index, 0 for terms not in the group.
+	 * @param n number of term indices to fill.
+	 * @param kernels loops to compute it with.
+	 */
+	public void centroid(boolean isRelevant, double[] idf, double[] out, int n, DenseKernels kernels) {
+		double[] sum = isRelevant ? drSum : dnrSum;
+		double num = isRelevant ? drCount : dnrCount;
+		int m = Math.min(n, sum.length);
+		if (num == 0)
+			m = 0; // no documents, no centroid
+		kernels.centroid(sum, idf, num, out, m);
+		Arrays.fill(out, m, n, 0);
+	}
+
+	/**
+	 * Rocchio's qm for every term index at once, in one pass over the sums.
+	 *
+	 * @param q query by term index, scaled by alpha already.
+	 * @param idf idf of every term, by term index.
+	 * @param beta Rocchio constant of the relevant centroid.
+	 * @param gamma Rocchio constant of the non-relevant centroid.
+	 * @param out filled with qm by term index, 0 where it is not positive.
+	 * @param n number of term indices to fill.
+	 * @param kernels loops to compute it with.
+	 */
+	public void rocchio(double[] q, double[] idf, double beta, double gamma, double[] out, int n, DenseKernels kernels) {
+		ensureCapacity(n); // the sums cover every term index, no bounds in the loop
+		// every sum of an empty group is 0, dividing by 1 keeps it 0 instead of 0 / 0
+		kernels.rocchio(q, drSum, Math.max(drCount, 1), beta, dnrSum, Math.max(dnrCount, 1), gamma, idf, out, n);
+	}
+
+	/**
+	 * @param isRelevant which group to use.
+	 * @return number of terms in documents of the group.
+	 */
+	public int touched(boolean isRelevant) {
+		return isRelevant ? drTouchedSize : dnrTouchedSize;
+	}
+
+	/**
+	 * @param isRelevant which group to use.
+	 * @param idx term index.
+	 * @return sum of logarithm tf of the term in the group.
+	 */
+	public double sum(boolean isRelevant, int idx) {
+		double[] sum = isRelevant ? drSum : dnrSum;
+		return idx < sum.length ? sum[idx] : 0;
+	}
+
+	/**
+	 * @param idx term index.
+	 * @return number of documents of both groups with the term.
+	 */
+	public int documents(int idx) {
+		return idx < drDocs.length ? drDocs[idx] + dnrDocs[idx] : 0;
+	}
+
+	public int getDrCount() {
+		return drCount;
+	}
+
+	public int getDnrCount() {
+		return dnrCount;
+	}
+
+	/**
+	 * forget all accumulated documents.
+	 */
+	public void clear() {
+		Arrays.fill(drSum, 0);
+		Arrays.fill(dnrSum, 0);
+		Arrays.fill(drDocs, 0);
+		Arrays.fill(dnrDocs, 0);
+		drTouchedSize = 0;
+		dnrTouchedSize = 0;
+		drCount = 0;
+		dnrCount = 0;
+	}
+
+	private void touch(int idx, boolean isRelevant) {
+		if (isRelevant) {
+			if (drTouchedSize == drTouched.length)
+				drTouched = Arrays.copyOf(drTouched, drTouchedSize * 2);
+			drTouched[drTouchedSize++] = idx;
+		} else {
+			if (dnrTouchedSize == dnrTouched.length)
+				dnrTouched = Arrays.copyOf(dnrTouched, dnrTouchedSize * 2);
+			dnrTouched[dnrTouchedSize++] = idx;
+		}
+	}
+
+	private void untouch(int idx, boolean isRelevant) {
+		int[] touched = isRelevant ? drTouched : dnrTouched;
+		int n = isRelevant ? drTouchedSize : dnrTouchedSize;
+		for (int k = 0; k < n; k++) {
+			if (touched[k] == idx) {
+				touched[k] = touched[n - 1]; // centroid sorts them anyway
+				break;
+			}
+		}
+		if (isRelevant)
+			drTouchedSize--;
+		else
+			dnrTouchedSize--;
+	}
+
+	private void ensureCapacity(int size) {
+		if (size <= drSum.length)
+			return;
+		int capacity = Math.max(size, drSum.length * 2);
+		drSum = Arrays.copyOf(drSum, capacity);
+		dnrSum = Arrays.copyOf(dnrSum, capacity);
+		drDocs = Arrays.copyOf(drDocs, capacity);
+		dnrDocs = Arrays.copyOf(dnrDocs, capacity);
+	}
+}
@@ -0,0 +1,20 @@
+package adb;
+
+import java.util.List;
+
+/**
+ * Interface SearchBackend: Where the results of a query come from.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public interface SearchBackend {
+
+	/**
+	 * Search for the top results of a query.
+	 * 
+	 * @param query Current search keyword.
+	 * @return results in the order of the search engine, relevance not set.
+	 * @throws Exception
+	 */
+	List<SingleResult> search(String query) throws Exception;
+}
@@ -0,0 +1,189 @@
+package adb;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class SessionManager: Host the feedback loops of many users in one JVM.
+ * Every session has its own RelevanceFeedback, rounds of a session run one after another
+ * on a bounded pool shared by all sessions, and sessions idle for too long are evicted.
+ * Rounds over the limits of a session or of the pool are rejected when they are submitted.
+ * A round after a failed one fails with the same cause, the session should be closed.
+ * The stop words are the immutable index shared by the whole JVM.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public class SessionManager {
+
+	/**
+	 * Class Session: State of one user, only touched by one round at a time.
+	 */
+	private static class Session {
+		private final RelevanceFeedback feedback;
+		private CompletableFuture<String> tail; // last round submitted, next round runs after it
+		private int queued; // rounds submitted and not finished
+		private boolean closed; // closed or evicted, takes no more rounds
+		private volatile long lastAccess; // System.nanoTime() of last round submitted or finished
+
+		Session(RelevanceFeedback feedback) {
+			this.feedback = feedback;
+			tail = CompletableFuture.completedFuture(null);
+			lastAccess = System.nanoTime();
+		}
+	}
+
+	private final StopWords stop; // shared by every session
+	private final Map<String, Session> sessions;
+	private final ThreadPoolExecutor executor;
+	private final Semaphore rounds; // rounds that can be submitted and not finished
+	private final int maxQueued; // rounds of one session submitted and not finished
+	private final ScheduledExecutorService evictor;
+	private final long idleNanos;
+
+	/**
+	 * @param threads number of threads running rounds.
+	 * @param queueCapacity rounds waiting, for a thread or for the round before them, more are rejected.
+	 * @param idleMillis a session without rounds for this long is evicted.
+	 */
+	public SessionManager(int threads, int queueCapacity, long idleMillis) {
+		this(threads, queueCapacity, idleMillis, queueCapacity + 1);
+	}
+
+	/**
+	 * @param threads number of threads running rounds.
+	 * @param queueCapacity rounds waiting, for a thread or for the round before them, more are rejected.
+	 * @param idleMillis a session without rounds for this long is evicted.
+	 * @param maxQueued rounds of one session submitted and not finished, more are rejected.
+	 */
+	public SessionManager(int threads, int queueCapacity, long idleMillis, int maxQueued) {
+		stop = StopWords.shared();
+		sessions = new ConcurrentHashMap<>();
+		// never full, the rounds permits keep it under queueCapacity
+		executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+		rounds = new Semaphore(threads + queueCapacity);
+		this.maxQueued = maxQueued;
+		idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+		evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "session-evictor");
+			t.setDaemon(true);
+			return t;
+		});
+		long period = Math.max(1, idleMillis / 2);
+		evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Start a new session.
+	 * 
+	 * @return id of the session.
+	 */
+	public String open() {
+		RelevanceFeedback feedback = new RelevanceFeedback(stop);
+		feedback.setVerbose(false);
+		String id = UUID.randomUUID().toString();
+		sessions.put(id, new Session(feedback));
+		return id;
+	}
+
+	/**
+	 * Run one round of a session, after the rounds submitted before it.
+	 * 
+	 * @param id id of the session.
+	 * @param number Number of new terms wanted to add to the query.
+	 * @param documents List of documents in the last search, with relevance.
+	 * @param query Array of terms in the last query.
+	 * @return New query that contains all sorted terms, fails with the cause of the round
+	 *         before if that one failed.
+	 * @throws IllegalArgumentException if there is no such session, or it was evicted.
+	 * @throws RejectedExecutionException if the session or the pool has too many rounds waiting.
+	 */
+	public CompletableFuture<String> queryExpansion(String id, int number, List<SingleResult> documents,
+			String[] query) {
+		Session session = sessions.get(id);
+		if (session == null)
+			throw new IllegalArgumentException("No session " + id);
+		synchronized (session) {
+			// evicted or closed after the get
+			if (session.closed)
+				throw new IllegalArgumentException("No session " + id);
+			if (session.queued >= maxQueued)
+				throw new RejectedExecutionException(session.queued + " rounds waiting in session " + id);
+			if (!rounds.tryAcquire())
+				throw new RejectedExecutionException("too many rounds waiting");
+			session.queued++;
+			session.lastAccess = System.nanoTime();
+			CompletableFuture<String> round = session.tail
+					.thenApplyAsync(last -> session.feedback.queryExpansion(number, documents, query), executor);
+			round.whenComplete((expanded, ex) -> finished(session));
+			session.tail = round;
+			return round;
+		}
+	}
+
+	private void finished(Session session) {
+		synchronized (session) {
+			session.queued--;
+			session.lastAccess = System.nanoTime();
+		}
+		rounds.release();
+	}
+
+	/**
+	 * End a session, a round still running finishes on its own.
+	 * 
+	 * @param id id of the session.
+	 * @return false if there is no such session.
+	 */
+	public boolean close(String id) {
+		Session session = sessions.remove(id);
+		if (session == null)
+			return false;
+		synchronized (session) {
+			session.closed = true;
+		}
+		return true;
+	}
+
+	/**
+	 * @return number of open sessions.
+	 */
+	public int size() {
+		return sessions.size();
+	}
+
+	/**
+	 * Stop taking rounds and wait for the running ones.
+	 * 
+	 * @throws InterruptedException
+	 */
+	public void shutdown() throws InterruptedException {
+		evictor.shutdownNow();
+		executor.shutdown();
+		executor.awaitTermination(1, TimeUnit.MINUTES);
+		sessions.clear();
+	}
+
+	private void evictIdle() {
+		long now = System.nanoTime();
+		sessions.entrySet().removeIf(entry -> {
+			Session session = entry.getValue();
+			synchronized (session) {
+				// under the lock queryExpansion takes, so it sees closed or the round keeps the session
+				if (session.queued > 0 || now - session.lastAccess <= idleNanos)
+					return false;
+				session.closed = true;
+				return true;
+			}
+		});
+	}
+}
@@ -0,0 +1,200 @@
+package adb;
+
+import java.util.Arrays;
+
+/**
+ * Class SparseVector: Vector in the vector space model that only keeps non-zero weights.
+ * Indices are sorted in ascending order, so two vectors can be merged in one pass.
+ * A vector made with a capacity is a buffer, filled again in place and grown when needed.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public class SparseVector {
+	private int[] indices; // term indices, ascending
+	private double[] values; // weight of every term index
+	private int nnz; // number of non-zero entries
+
+	/**
+	 * @param capacity entries before the arrays grow.
+	 */
+	SparseVector(int capacity) {
+		this(new int[capacity], new double[capacity], 0);
+	}
+
+	/**
+	 * @param indices ascending term indices, not copied.
+	 * @param values weights of the indices, not copied.
+	 * @param nnz number of entries used in both arrays.
+	 */
+	public SparseVector(int[] indices, double[] values, int nnz) {
+		this.indices = indices;
+		this.values = values;
+		this.nnz = nnz;
+	}
+
+	/**
+	 * Build a vector from entries in any order.
+	 *
+	 * @param indices term indices, not repeated.
+	 * @param values weights of the indices.
+	 * @param nnz number of entries used in both arrays.
+	 * @return vector with sorted indices.
+	 */
+	public static SparseVector of(int[] indices, double[] values, int nnz) {
+		long[] order = new long[nnz];
+		for (int k = 0; k < nnz; k++) {
+			order[k] = ((long) indices[k] << 32) | k;
+		}
+		Arrays.sort(order);
+
+		int[] idx = new int[nnz];
+		double[] val = new double[nnz];
+		for (int k = 0; k < nnz; k++) {
+			idx[k] = (int) (order[k] >>> 32);
+			val[k] = values[(int) order[k]];
+		}
+		return new SparseVector(idx, val, nnz);
+	}
+
+	public int nnz() {
+		return nnz;
+	}
+
+	public int index(int k) {
+		return indices[k];
+	}
+
+	public double value(int k) {
+		return values[k];
+	}
+
+	/**
+	 * @param idx term index.
+	 * @return weight of the term, 0 if it is not stored.
+	 */
+	public double get(int idx) {
+		int k = Arrays.binarySearch(indices, 0, nnz, idx);
+		return k < 0 ? 0 : values[k];
+	}
+
+	/**
+	 * Multiply a const to all elements in place.
+	 *
+	 * @param factor Const factor.
+	 * @return this vector.
+	 */
+	public SparseVector scale(final double factor) {
+		for (int k = 0; k < nnz; k++) {
+			values[k] *= factor;
+		}
+		return this;
+	}
+
+	/**
+	 * Add factor * v to a dense vector.
+	 *
+	 * @param dense dense vector, long enough for every index of this vector.
+	 * @param factor Const factor.
+	 */
+	public void addTo(double[] dense, double factor) {
+		for (int k = 0; k < nnz; k++) {
+			dense[indices[k]] += values[k] * factor;
+		}
+	}
+
+	/**
+	 * Merge two vectors into a + factor * b.
+	 *
+	 * @param a first vector.
+	 * @param b second vector.
+	 * @param factor Const factor of b.
+	 * @return new vector.
+	 */
+	public static SparseVector add(SparseVector a, SparseVector b, double factor) {
+		int[] idx = new int[a.nnz + b.nnz];
+		double[] val = new double[a.nnz + b.nnz];
+		int i = 0, j = 0, n = 0;
+		while (i < a.nnz || j < b.nnz) {
+			if (j == b.nnz || (i < a.nnz && a.indices[i] < b.indices[j])) {
+				idx[n] = a.indices[i];
+				val[n++] = a.values[i++];
+			} else if (i == a.nnz || b.indices[j] < a.indices[i]) {
+				idx[n] = b.indices[j];
+				val[n++] = b.values[j++] * factor;
+			} else {
+				idx[n] = a.indices[i];
+				val[n++] = a.values[i++] + b.values[j++] * factor;
+			}
+		}
+		return new SparseVector(idx, val, n);
+	}
+
+	/**
+	 * Empty the vector, its arrays are kept.
+	 */
+	void clear() {
+		nnz = 0;
+	}
+
+	/**
+	 * Add an entry after the others.
+	 *
+	 * @param idx term index, above every index of the vector.
+	 * @param value weight of the term.
+	 */
+	void append(int idx, double value) {
+		if (nnz == indices.length) {
+			indices = Arrays.copyOf(indices, Math.max(16, 2 * nnz));
+			values = Arrays.copyOf(values, indices.length);
+		}
+		indices[nnz] = idx;
+		values[nnz++] = value;
+	}
+
+	/**
+	 * Fill the vector with another one, in its own arrays.
+	 *
+	 * @return this vector.
+	 */
+	SparseVector set(SparseVector other) {
+		clear();
+		for (int k = 0; k < other.nnz; k++) {
+			append(other.indices[k], other.values[k]);
+		}
+		return this;
+	}
+
+	/**
+	 * Fill the vector with the positive entries of a dense vector, in its own arrays.
+	 *
+	 * @param dense weights by term index.
+	 * @param n number of term indices used in dense.
+	 * @return this vector, with the positive weights only.
+	 */
+	SparseVector setPositive(double[] dense, int n) {
+		clear();
+		for (int i = 0; i < n; i++) {
+			if (dense[i] > 0)
+				append(i, dense[i]);
+		}
+		return this;
+	}
+
+	/**
+	 * drop the entries that are not positive.
+	 *
+	 * @return vector with positive weights only.
+	 */
+	public SparseVector positive() {
+		int[] idx = new int[nnz];
+		double[] val = new double[nnz];
+		int n = 0;
+		for (int k = 0; k < nnz; k++) {
+			if (values[k] > 0) {
+				idx[n] = indices[k];
+				val[n++] = values[k];
+			}
+		}
+		return new SparseVector(idx, val, n);
+	}
+}
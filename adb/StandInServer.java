@@ -0,0 +1,167 @@
+package adb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Class StandInServer: Local HTTP server that answers like the Bing search API.
+ * The results come from any SearchBackend, usually a ReplayBackend, and are served
+ * as Atom feeds, gzipped if the client accepts it, so BingSearchBackend and parseXml can be
+ * tested without network.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public class StandInServer {
+	public static final String PATH = "/Bing/Search/Web";
+
+	static {
+		// headers and body go out in two writes, without this the delayed ack of the client stalls every answer
+		if (System.getProperty("sun.net.httpserver.nodelay") == null)
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+	}
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final SearchBackend backend;
+	private volatile long latency; // milliseconds to wait before every answer, like a remote search
+
+	/**
+	 * @param backend where the results come from, must be thread safe for more than one thread.
+	 * @param threads number of threads serving requests.
+	 * @throws IOException
+	 */
+	public StandInServer(SearchBackend backend, int threads) throws IOException {
+		this.backend = backend;
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		executor = Executors.newFixedThreadPool(threads);
+		server.setExecutor(executor);
+		server.createContext(PATH, this::handle);
+	}
+
+	/**
+	 * Serve the recorded rounds of a transcript until the process is killed.
+	 *
+	 * @param args transcript, and the file to write the endpoint to.
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length != 2) {
+			System.err.println("Usage: StandInServer <transcript> <endpoint file>");
+			System.exit(1);
+		}
+		List<Transcript.Round> rounds = new ArrayList<>();
+		for (List<Transcript.Round> session : Transcript.read(Paths.get(args[0]))) {
+			rounds.addAll(session);
+		}
+		StandInServer server = new StandInServer(new ReplayBackend(rounds), 1);
+		server.start();
+		// written last, whoever waits for the file can send requests once it is there
+		Files.writeString(Paths.get(args[1]), server.getEndpoint());
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	public void stop() {
+		server.stop(0);
+		executor.shutdown();
+	}
+
+	/**
+	 * @param latency milliseconds to wait before every answer.
+	 */
+	public void setLatency(long latency) {
+		this.latency = latency;
+	}
+
+	/**
+	 * @return url to give to BingSearchBackend.
+	 */
+	public String getEndpoint() {
+		return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + PATH;
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			String rawQuery = exchange.getRequestURI().getRawQuery();
+			String query = parameter(rawQuery, "Query");
+			if (query == null) {
+				exchange.sendResponseHeaders(400, -1);
+				return;
+			}
+			// Query is quoted, '%27' in the url
+			if (query.length() >= 2 && query.startsWith("'") && query.endsWith("'"))
+				query = query.substring(1, query.length() - 1);
+			List<SingleResult> results;
+			synchronized (backend) {
+				results = backend.search(query);
+			}
+			if (latency > 0)
+				Thread.sleep(latency);
+			int skip = intParameter(rawQuery, "$skip", 0);
+			int top = intParameter(rawQuery, "$top", results.size());
+			results = results.subList(Math.min(skip, results.size()), Math.min(skip + top, results.size()));
+
+			byte[] feed = AtomFeed.write(results);
+			exchange.getResponseHeaders().set("Content-Type", "application/atom+xml;charset=utf-8");
+			String encoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+			if (encoding != null && encoding.contains("gzip")) {
+				feed = gzip(feed);
+				exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+			}
+			exchange.sendResponseHeaders(200, feed.length);
+			try (OutputStream body = exchange.getResponseBody()) {
+				body.write(feed);
+			}
+		} catch (Exception ex) {
+			if (ex instanceof InterruptedException)
+				Thread.currentThread().interrupt();
+			System.err.println("[WARN] StandInServer failed on " + exchange.getRequestURI() + ": " + ex);
+			// once the headers are out the client only sees the body end early
+			if (exchange.getResponseCode() == -1)
+				exchange.sendResponseHeaders(500, -1);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private static byte[] gzip(byte[] bytes) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2);
+		try (GZIPOutputStream zip = new GZIPOutputStream(out)) {
+			zip.write(bytes);
+		}
+		return out.toByteArray();
+	}
+
+	private static String parameter(String rawQuery, String name) throws UnsupportedEncodingException {
+		if (rawQuery == null)
+			return null;
+		for (String pair : rawQuery.split("&")) {
+			int eq = pair.indexOf('=');
+			if (eq > 0 && URLDecoder.decode(pair.substring(0, eq), "UTF-8").equals(name))
+				return URLDecoder.decode(pair.substring(eq + 1), "UTF-8");
+		}
+		return null;
+	}
+
+	private static int intParameter(String rawQuery, String name, int defaultValue)
+			throws UnsupportedEncodingException {
+		String value = parameter(rawQuery, name);
+		return value == null ? defaultValue : Integer.parseInt(value);
+	}
+}
@@ -0,0 +1,265 @@
+package adb;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Class StopWords: Immutable stop word index, loaded once per JVM and shared by every thread.
+ * All words are packed in one char[] and found through an open addressing table of ints,
+ * so a word can be looked up from a char range or any CharSequence without a String.
+ * The arrays can be saved as a binary snapshot (java adb.StopWords stop.txt stop.bin), which
+ * is mapped and copied in bulk at startup instead of reading and hashing every line.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public final class StopWords {
+	/** system property with the path of the stop words file. */
+	public static final String PROPERTY = "adb.stopwords";
+	/** name of the stop words file, on the classpath or in the working directory. */
+	public static final String FILE = "stop.txt";
+	/** name of the snapshot on the classpath, it goes before FILE. */
+	public static final String SNAPSHOT = "stop.bin";
+	private static final int MAGIC = 0x53544f50; // "STOP"
+	private static final int HEADER = 16; // magic, words, chars, table slots
+
+	private static StopWords shared; // loaded on first use
+
+	private final char[] chars; // all words, one after another
+	private final int[] offsets; // word k is chars[offsets[k], offsets[k + 1])
+	private final int[] hashes; // hash of word k, same as String.hashCode
+	private final int[] table; // slot : word + 1, 0 for empty slot
+
+	private StopWords(List<String> words) {
+		int total = 0;
+		for (String word : words) {
+			total += word.length();
+		}
+		chars = new char[total];
+		offsets = new int[words.size() + 1];
+		hashes = new int[words.size()];
+		int capacity = Integer.highestOneBit(Math.max(1, words.size()) * 4);
+		table = new int[capacity];
+
+		int n = 0;
+		for (String word : words) {
+			if (contains(word))
+				continue; // repeated word
+			word.getChars(0, word.length(), chars, offsets[n]);
+			offsets[n + 1] = offsets[n] + word.length();
+			hashes[n] = word.hashCode();
+			int slot = slot(hashes[n]);
+			while (table[slot] != 0) {
+				slot = (slot + 1) & (table.length - 1);
+			}
+			table[slot] = ++n;
+		}
+	}
+
+	private StopWords(char[] chars, int[] offsets, int[] hashes, int[] table) {
+		this.chars = chars;
+		this.offsets = offsets;
+		this.hashes = hashes;
+		this.table = table;
+	}
+
+	/**
+	 * The stop words of this JVM, from the file named by the adb.stopwords property, a
+	 * snapshot if it ends with .bin, or stop.bin or stop.txt on the classpath, or stop.txt
+	 * in the working directory.
+	 *
+	 * @return shared stop words.
+	 * @throws UncheckedIOException if no stop words can be loaded, next call tries again.
+	 */
+	public static synchronized StopWords shared() {
+		if (shared == null) {
+			try {
+				shared = loadDefault();
+			} catch (IOException ex) {
+				throw new UncheckedIOException("stop elimination can't proceed", ex);
+			}
+		}
+		return shared;
+	}
+
+	private static StopWords loadDefault() throws IOException {
+		String path = System.getProperty(PROPERTY);
+		if (path != null)
+			return path.endsWith(".bin") ? map(Paths.get(path)) : load(Paths.get(path));
+		InputStream snapshot = StopWords.class.getResourceAsStream("/" + SNAPSHOT);
+		if (snapshot != null) {
+			try (InputStream in = snapshot) {
+				return read(ByteBuffer.wrap(in.readAllBytes()));
+			}
+		}
+		InputStream resource = StopWords.class.getResourceAsStream("/" + FILE);
+		if (resource != null) {
+			try (InputStream in = resource) {
+				return load(in);
+			}
+		}
+		return load(Paths.get(FILE));
+	}
+
+	/**
+	 * @param file one stop word per line.
+	 * @return stop words of the file.
+	 * @throws IOException
+	 */
+	public static StopWords load(Path file) throws IOException {
+		return of(Files.readAllLines(file, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @param in one stop word per line, not closed.
+	 * @return stop words of the stream.
+	 * @throws IOException
+	 */
+	public static StopWords load(InputStream in) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		List<String> words = new ArrayList<>();
+		String word;
+		while ((word = reader.readLine()) != null) {
+			words.add(word);
+		}
+		return of(words);
+	}
+
+	/**
+	 * @param file snapshot written by save.
+	 * @return stop words of the snapshot.
+	 * @throws IOException if the file is not a snapshot.
+	 */
+	public static StopWords map(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	private static StopWords read(ByteBuffer buffer) throws IOException {
+		if (buffer.remaining() < HEADER || buffer.getInt(0) != MAGIC)
+			throw new IOException("not a stop words snapshot");
+		int words = buffer.getInt(4), total = buffer.getInt(8), slots = buffer.getInt(12);
+		if (buffer.remaining() != HEADER + 2L * total + 4L * (2L * words + 1 + slots))
+			throw new IOException("stop words snapshot of the wrong size");
+		char[] chars = new char[total];
+		int[] offsets = new int[words + 1];
+		int[] hashes = new int[words];
+		int[] table = new int[slots];
+		buffer.position(HEADER);
+		buffer.asCharBuffer().get(chars);
+		buffer.position(HEADER + 2 * total);
+		buffer.asIntBuffer().get(offsets).get(hashes).get(table);
+		return new StopWords(chars, offsets, hashes, table);
+	}
+
+	/**
+	 * Write the arrays of the index, map reads them back.
+	 *
+	 * @param file snapshot to write, replaced if it exists.
+	 * @throws IOException
+	 */
+	public void save(Path file) throws IOException {
+		int words = size(), total = offsets[words];
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER + 2 * total + 4 * (2 * words + 1 + table.length));
+		buffer.putInt(MAGIC).putInt(words).putInt(total).putInt(table.length);
+		buffer.asCharBuffer().put(chars, 0, total);
+		buffer.position(HEADER + 2 * total);
+		buffer.asIntBuffer().put(offsets, 0, words + 1).put(hashes, 0, words).put(table);
+		Files.write(file, buffer.array());
+	}
+
+	/**
+	 * Write the snapshot of a stop words file.
+	 *
+	 * @param args stop words file and snapshot to write.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: StopWords <stop words file> <snapshot>");
+			System.exit(1);
+		}
+		StopWords stop = load(Paths.get(args[0]));
+		stop.save(Paths.get(args[1]));
+		System.out.println(stop.size() + " stop words to " + args[1]);
+	}
+
+	/**
+	 * @param words stop words.
+	 * @return index of the words.
+	 */
+	public static StopWords of(Collection<String> words) {
+		return new StopWords(new ArrayList<>(words));
+	}
+
+	/**
+	 * @param word word to look for.
+	 * @return whether the word is a stop word.
+	 */
+	public boolean contains(CharSequence word) {
+		int hash = 0;
+		for (int i = 0; i < word.length(); i++) {
+			hash = 31 * hash + word.charAt(i);
+		}
+		for (int slot = slot(hash);; slot = (slot + 1) & (table.length - 1)) {
+			int k = table[slot] - 1;
+			if (k < 0)
+				return false;
+			if (hashes[k] == hash && offsets[k + 1] - offsets[k] == word.length()) {
+				int i = 0;
+				while (i < word.length() && chars[offsets[k] + i] == word.charAt(i)) {
+					i++;
+				}
+				if (i == word.length())
+					return true;
+			}
+		}
+	}
+
+	/**
+	 * @param buf characters of the word.
+	 * @param off first character.
+	 * @param len number of characters.
+	 * @return whether the word is a stop word.
+	 */
+	public boolean contains(char[] buf, int off, int len) {
+		int hash = TermDictionary.hash(buf, off, len);
+		for (int slot = slot(hash);; slot = (slot + 1) & (table.length - 1)) {
+			int k = table[slot] - 1;
+			if (k < 0)
+				return false;
+			if (hashes[k] == hash && offsets[k + 1] - offsets[k] == len
+					&& Arrays.equals(chars, offsets[k], offsets[k + 1], buf, off, off + len))
+				return true;
+		}
+	}
+
+	/**
+	 * @return number of stop words.
+	 */
+	public int size() {
+		int n = 0;
+		for (int slot : table) {
+			if (slot != 0)
+				n++;
+		}
+		return n;
+	}
+
+	private int slot(int hash) {
+		return (hash ^ (hash >>> 16)) & (table.length - 1);
+	}
+}
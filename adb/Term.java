@@ -1,24 +1,33 @@
 package adb;
 
-import java.util.HashMap;
-
 /**
  * Class Term: Contains the term frequencies of all terms in one single document.
  * Package: adb
  * Advanced Database Systems Project 1
  */
 public class Term {
+    private String url; // url of the document, null for the query
     private boolean isRelevant;
     private int length; // the number of words in documents
-    private HashMap<String, Integer> tf; // word : frequency of word in single document
-//    private double[] weights; // vector space weights
+    private int[] ids; // ids of words in single document, ascending
+    private int[] tf; // frequency of ids[k] in single document
+    private SparseVector weights; // logarithm tf by term index
     /**
      * @return the length of the document before stop word elimination.
      */
     public Term() {
-    	tf = new HashMap<>();
+    	ids = new int[0];
+    	tf = new int[0];
     }
     
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
     public int getLength() {
         return length;
     }
@@ -39,17 +48,40 @@ public class Term {
     }
 
     /**
-     * @return return the tf map of single document.
+     * @return ids of the words of single document, in ascending order.
+     */
+    public int[] getIds() {
+        return ids;
+    }
+
+    /**
+     * @return frequency of every word in getIds() of single document.
      */
-    public HashMap<String, Integer> getTf() {
+    public int[] getTf() {
         return tf;
     }
 
     /**
-     * @param tf word : frequency for this document.
+     * @param ids ids of the words in ascending order.
+     * @param tf frequency of every word for this document.
      */
-    public void setTf(HashMap<String, Integer> tf) {
+    public void setTf(int[] ids, int[] tf) {
+        this.ids = ids;
         this.tf = tf;
     }
+
+    /**
+     * @return logarithm tf of the words in this document, by term index.
+     */
+    public SparseVector getWeights() {
+        return weights;
+    }
+
+    /**
+     * @param weights logarithm tf of the words in this document, by term index.
+     */
+    public void setWeights(SparseVector weights) {
+        this.weights = weights;
+    }
     
 }
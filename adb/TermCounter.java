@@ -0,0 +1,109 @@
+package adb;
+
+import java.util.Arrays;
+
+/**
+ * Class TermCounter: Reusable counter of term frequency of one document by term id.
+ * Counts live in a dense int[] by id, only the touched ids are visited to build the Term,
+ * so the same counter can be used for every document without clearing the whole array.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public class TermCounter {
+	private int[] counts; // id : frequency in current document
+	private int[] touched; // ids seen in current document
+	private int touchedSize;
+
+	public TermCounter() {
+		counts = new int[256];
+		touched = new int[64];
+	}
+
+	/**
+	 * count one more occurrence of a word.
+	 *
+	 * @param id id of the word.
+	 */
+	public void add(int id) {
+		if (id >= counts.length)
+			counts = Arrays.copyOf(counts, Math.max(id + 1, counts.length * 2));
+		if (counts[id]++ == 0) {
+			if (touchedSize == touched.length)
+				touched = Arrays.copyOf(touched, touchedSize * 2);
+			touched[touchedSize++] = id;
+		}
+	}
+
+	/**
+	 * count more occurrences of a word.
+	 *
+	 * @param id id of the word.
+	 * @param n number of occurrences, at least 1.
+	 */
+	public void add(int id, int n) {
+		add(id);
+		counts[id] += n - 1;
+	}
+
+	/**
+	 * @return number of different words in current document.
+	 */
+	public int size() {
+		return touchedSize;
+	}
+
+	/**
+	 * @param k k-th different word, in order of first seen.
+	 * @return id of the word.
+	 */
+	public int id(int k) {
+		return touched[k];
+	}
+
+	/**
+	 * @param k k-th different word, in order of first seen.
+	 * @return frequency of the word in current document.
+	 */
+	public int count(int k) {
+		return counts[touched[k]];
+	}
+
+	/**
+	 * Order the different words by id instead of first seen.
+	 */
+	public void sort() {
+		Arrays.sort(touched, 0, touchedSize);
+	}
+
+	/**
+	 * Forget current document without building its Term.
+	 */
+	public void clear() {
+		for (int k = 0; k < touchedSize; k++) {
+			counts[touched[k]] = 0;
+		}
+		touchedSize = 0;
+	}
+
+	/**
+	 * Build the Term of current document and reset the counter for next document.
+	 *
+	 * @param length the number of words in document before stop word elimination.
+	 * @return Term with ids in ascending order.
+	 */
+	public Term toTerm(int length) {
+		int[] ids = Arrays.copyOf(touched, touchedSize);
+		Arrays.sort(ids);
+		int[] tf = new int[ids.length];
+		for (int k = 0; k < ids.length; k++) {
+			tf[k] = counts[ids[k]];
+			counts[ids[k]] = 0;
+		}
+		touchedSize = 0;
+
+		Term term = new Term();
+		term.setLength(length);
+		term.setTf(ids, tf);
+		return term;
+	}
+}
@@ -0,0 +1,246 @@
+package adb;
+
+import java.util.Arrays;
+
+/**
+ * Class TermDictionary: Interned terms with dense int ids and their document frequency.
+ * Ids are given in order of first seen, id : term is a String[] and id : df is an int[],
+ * term : id is an open addressing table, so counting never boxes an Integer.
+ * A removed word gives its id back, and the next new word takes it, so a bounded
+ * vocabulary keeps ids, and every array indexed by them, from growing.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public class TermDictionary {
+	private static final int INITIAL_CAPACITY = 256;
+
+	private String[] terms; // id : term
+	private int[] hashes; // id : hash code of term
+	private int[] docFreq; // id : # docs
+	private int[] table; // slot : id + 1, 0 for empty slot
+	private int size;
+	private int[] free; // removed ids, taken by new words first
+	private int freeSize;
+
+	public TermDictionary() {
+		terms = new String[INITIAL_CAPACITY];
+		hashes = new int[INITIAL_CAPACITY];
+		docFreq = new int[INITIAL_CAPACITY];
+		table = new int[INITIAL_CAPACITY * 2];
+		free = new int[0];
+	}
+
+	/**
+	 * @param other dictionary to copy, same ids and document frequencies.
+	 */
+	public TermDictionary(TermDictionary other) {
+		terms = other.terms.clone();
+		hashes = other.hashes.clone();
+		docFreq = other.docFreq.clone();
+		table = other.table.clone();
+		size = other.size;
+		free = other.free.clone();
+		freeSize = other.freeSize;
+	}
+
+	/**
+	 * @param term word to look for.
+	 * @return id of the word, -1 if it has never been seen.
+	 */
+	public int find(String term) {
+		int hash = term.hashCode();
+		for (int slot = slot(hash);; slot = (slot + 1) & (table.length - 1)) {
+			int id = table[slot] - 1;
+			if (id < 0 || (hashes[id] == hash && terms[id].equals(term)))
+				return id;
+		}
+	}
+
+	/**
+	 * Look for a word without building a String for it.
+	 *
+	 * @param buf characters of the word.
+	 * @param off first character.
+	 * @param len number of characters.
+	 * @return id of the word, -1 if it has never been seen.
+	 */
+	public int find(char[] buf, int off, int len) {
+		int hash = hash(buf, off, len);
+		for (int slot = slot(hash);; slot = (slot + 1) & (table.length - 1)) {
+			int id = table[slot] - 1;
+			if (id < 0 || (hashes[id] == hash && equals(terms[id], buf, off, len)))
+				return id;
+		}
+	}
+
+	/**
+	 * @param term word to add.
+	 * @return id of the word, a new id with zero df if it has never been seen.
+	 */
+	public int intern(String term) {
+		int id = find(term);
+		return id >= 0 ? id : add(term, term.hashCode());
+	}
+
+	/**
+	 * Add a word, the String is only built the first time the word is seen.
+	 *
+	 * @param buf characters of the word.
+	 * @param off first character.
+	 * @param len number of characters.
+	 * @return id of the word, a new id with zero df if it has never been seen.
+	 */
+	public int intern(char[] buf, int off, int len) {
+		int id = find(buf, off, len);
+		return id >= 0 ? id : add(new String(buf, off, len), hash(buf, off, len));
+	}
+
+	/**
+	 * @param id id of a word.
+	 * @return the word, null if the id was removed.
+	 */
+	public String term(int id) {
+		return terms[id];
+	}
+
+	public int docFreq(int id) {
+		return docFreq[id];
+	}
+
+	/**
+	 * one more document contains the word.
+	 *
+	 * @param id id of the word.
+	 */
+	public void incDocFreq(int id) {
+		docFreq[id]++;
+	}
+
+	/**
+	 * more documents contain the word.
+	 *
+	 * @param id id of the word.
+	 * @param n number of documents.
+	 */
+	public void incDocFreq(int id, int n) {
+		docFreq[id] += n;
+	}
+
+	/**
+	 * @param id id of the word, in one document less.
+	 */
+	public void decDocFreq(int id) {
+		docFreq[id]--;
+	}
+
+	/**
+	 * @return number of ids given, ids are 0 to size - 1, removed ones included.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return number of words, not counting the removed ones.
+	 */
+	public int live() {
+		return size - freeSize;
+	}
+
+	/**
+	 * Forget a word, its id is given to the next new word.
+	 *
+	 * @param id id of the word, no document may still refer to it.
+	 */
+	public void remove(int id) {
+		int hole = slot(hashes[id]);
+		while (table[hole] != id + 1) {
+			hole = (hole + 1) & (table.length - 1);
+		}
+		// shift back the words after the hole that can't be found across it
+		for (int next = (hole + 1) & (table.length - 1); table[next] != 0; next = (next + 1) & (table.length - 1)) {
+			int home = slot(hashes[table[next] - 1]);
+			if (((next - home) & (table.length - 1)) >= ((next - hole) & (table.length - 1))) {
+				table[hole] = table[next];
+				hole = next;
+			}
+		}
+		table[hole] = 0;
+		terms[id] = null;
+		docFreq[id] = 0;
+		if (freeSize == free.length)
+			free = Arrays.copyOf(free, Math.max(16, freeSize * 2));
+		free[freeSize++] = id;
+	}
+
+	public void clear() {
+		Arrays.fill(terms, 0, size, null);
+		Arrays.fill(docFreq, 0, size, 0);
+		Arrays.fill(table, 0);
+		size = 0;
+		freeSize = 0;
+	}
+
+	private int add(String term, int hash) {
+		if (freeSize > 0) {
+			int id = free[--freeSize];
+			terms[id] = term;
+			hashes[id] = hash;
+			place(id);
+			return id;
+		}
+		if (size == terms.length) {
+			int capacity = terms.length * 2;
+			terms = Arrays.copyOf(terms, capacity);
+			hashes = Arrays.copyOf(hashes, capacity);
+			docFreq = Arrays.copyOf(docFreq, capacity);
+			rehash(capacity * 2);
+		}
+		int id = size++;
+		terms[id] = term;
+		hashes[id] = hash;
+		place(id);
+		return id;
+	}
+
+	private void rehash(int capacity) {
+		table = new int[capacity];
+		for (int id = 0; id < size; id++) {
+			if (terms[id] != null)
+				place(id);
+		}
+	}
+
+	private void place(int id) {
+		int slot = slot(hashes[id]);
+		while (table[slot] != 0) {
+			slot = (slot + 1) & (table.length - 1);
+		}
+		table[slot] = id + 1;
+	}
+
+	private int slot(int hash) {
+		return (hash ^ (hash >>> 16)) & (table.length - 1);
+	}
+
+	/**
+	 * same as String.hashCode, so both kinds of lookup meet in the same slot.
+	 */
+	static int hash(char[] buf, int off, int len) {
+		int h = 0;
+		for (int i = off; i < off + len; i++) {
+			h = 31 * h + buf[i];
+		}
+		return h;
+	}
+
+	private static boolean equals(String term, char[] buf, int off, int len) {
+		if (term.length() != len)
+			return false;
+		for (int i = 0; i < len; i++) {
+			if (term.charAt(i) != buf[off + i])
+				return false;
+		}
+		return true;
+	}
+}
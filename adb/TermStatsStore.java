@@ -0,0 +1,395 @@
+package adb;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Class TermStatsStore: Document frequency of every term over all sessions, in a memory mapped file.
+ * The file holds the number of documents N, an open addressing table of terms with their df,
+ * and the chars of the terms, so opening it only maps it, nothing is loaded.
+ * Any number of readers, in this process or others, run beside one writer. The writer holds
+ * a lock file, and wraps every change in a sequence number that readers check, so a reader
+ * retries instead of seeing half a change, a bounded number of times. A writer that died inside
+ * a change leaves the sequence odd, the next writer repairs the counts and makes it even again.
+ * When the file is full the writer rehashes into a bigger file that replaces it, and marks the
+ * old one, so readers map the new one.
+ * Thread safe.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public class TermStatsStore implements Closeable {
+	private static final int MAGIC = 0x41444253; // "ADBS"
+	private static final int VERSION = 1;
+	private static final int INITIAL_SLOTS = 1 << 14;
+	private static final int SPINS = 64; // retries before a reader yields to the writer
+	private static final int RETRIES = 100000; // retries before a reader gives up
+
+	// header
+	private static final int SEQUENCE = 8; // long, odd while the writer changes the file
+	private static final int DOCUMENTS = 16; // long, N
+	private static final int TERMS = 24; // int, number of terms
+	private static final int SLOTS = 28; // int, size of the table, a power of 2
+	private static final int CHARS = 32; // int, room for chars of terms
+	private static final int CHARS_USED = 36; // int
+	private static final int SUPERSEDED = 40; // int, 1 once a bigger file has replaced this one
+	private static final int HEADER = 64;
+	// slot: hash, offset of chars, length, df. a slot is empty while df is 0.
+	private static final int SLOT = 16;
+
+	private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class,
+			ByteOrder.BIG_ENDIAN);
+	private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+	private final Path file;
+	private final boolean writer;
+	private FileChannel lockChannel; // writer only, holds the lock
+	private FileLock lock;
+	private volatile MappedByteBuffer map;
+
+	private TermStatsStore(Path file, boolean writer) {
+		this.file = file;
+		this.writer = writer;
+	}
+
+	/**
+	 * Map the store for reading, the file must exist.
+	 *
+	 * @param file file of the store.
+	 * @return reader of the store.
+	 * @throws IOException
+	 */
+	public static TermStatsStore openReader(Path file) throws IOException {
+		TermStatsStore store = new TermStatsStore(file, false);
+		store.map = mapExisting(file, FileChannel.MapMode.READ_ONLY);
+		return store;
+	}
+
+	/**
+	 * Map the store for writing, created if missing. Only one writer at a time.
+	 *
+	 * @param file file of the store.
+	 * @return writer of the store, which can read too.
+	 * @throws IOException if another writer has the store.
+	 */
+	public static TermStatsStore openWriter(Path file) throws IOException {
+		TermStatsStore store = new TermStatsStore(file, true);
+		Path lockFile = Paths.get(file + ".lock");
+		store.lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		try {
+			store.lock = store.lockChannel.tryLock();
+		} catch (OverlappingFileLockException ex) {
+			store.lock = null;
+		}
+		if (store.lock == null) {
+			store.lockChannel.close();
+			throw new IOException("another writer has " + file);
+		}
+		if (!Files.exists(file))
+			create(file, INITIAL_SLOTS, INITIAL_SLOTS * 8).force();
+		try {
+			store.map = mapExisting(file, FileChannel.MapMode.READ_WRITE);
+			store.recover();
+		} catch (IOException ex) {
+			store.lock.release();
+			store.lockChannel.close();
+			throw ex;
+		}
+		return store;
+	}
+
+	/**
+	 * A writer that died inside a change left the sequence odd, and maybe a term in its slot
+	 * that the counts miss. Count the terms and chars again from the slots and make the
+	 * sequence even, so readers stop retrying. N and the df of that document may be one off.
+	 *
+	 * @throws IOException if the header doesn't fit the table.
+	 */
+	private void recover() throws IOException {
+		MappedByteBuffer map = this.map;
+		int slots = map.getInt(SLOTS), chars = map.getInt(CHARS);
+		long sequence = map.getLong(SEQUENCE);
+		if ((sequence & 1) != 0) {
+			System.err.println("[WARN] a writer of " + file + " died inside a change, repairing it");
+			int terms = 0, used = 0;
+			for (int i = 0; i < slots; i++) {
+				int slot = HEADER + i * SLOT;
+				if (map.getInt(slot + 12) == 0)
+					continue;
+				int offset = map.getInt(slot + 4), length = map.getInt(slot + 8);
+				if (offset < 0 || length < 0 || offset > chars - length)
+					throw new IOException("damaged term stats file: " + file);
+				terms++;
+				used = Math.max(used, offset + length);
+			}
+			map.putInt(TERMS, terms);
+			map.putInt(CHARS_USED, used);
+			LONGS.setRelease(map, SEQUENCE, sequence + 1);
+			map.force();
+		}
+		int terms = map.getInt(TERMS), used = map.getInt(CHARS_USED);
+		if (terms < 0 || terms > slots || used < 0 || used > chars || map.getLong(DOCUMENTS) < 0)
+			throw new IOException("damaged term stats file: " + file);
+	}
+
+	private static MappedByteBuffer mapExisting(Path file, FileChannel.MapMode mode) throws IOException {
+		StandardOpenOption[] options = mode == FileChannel.MapMode.READ_ONLY
+				? new StandardOpenOption[] { StandardOpenOption.READ }
+				: new StandardOpenOption[] { StandardOpenOption.READ, StandardOpenOption.WRITE };
+		try (FileChannel channel = FileChannel.open(file, options)) {
+			if (channel.size() < HEADER)
+				throw new IOException("not a term stats file: " + file);
+			MappedByteBuffer map = channel.map(mode, 0, channel.size());
+			int slots = map.getInt(SLOTS);
+			if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION || slots <= 0 || Integer.bitCount(slots) != 1
+					|| map.getInt(CHARS) < 0 || channel.size() != size(slots, map.getInt(CHARS)))
+				throw new IOException("not a term stats file of this version: " + file);
+			return map;
+		}
+	}
+
+	private static MappedByteBuffer create(Path file, int slots, int chars) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size(slots, chars));
+			map.putInt(0, MAGIC);
+			map.putInt(4, VERSION);
+			map.putInt(SLOTS, slots);
+			map.putInt(CHARS, chars);
+			return map;
+		}
+	}
+
+	private static long size(int slots, int chars) {
+		return HEADER + (long) slots * SLOT + (long) chars * 2;
+	}
+
+	/**
+	 * @return whether documents can be added.
+	 */
+	public boolean isWriter() {
+		return writer;
+	}
+
+	/**
+	 * @return number of documents N.
+	 * @throws IOException if the writer stays inside a change.
+	 */
+	public long documents() throws IOException {
+		for (int retry = 0;; retry++) {
+			MappedByteBuffer map = current();
+			long sequence = (long) LONGS.getAcquire(map, SEQUENCE);
+			long documents = map.getLong(DOCUMENTS);
+			if (stable(map, sequence))
+				return documents;
+			backOff(retry);
+		}
+	}
+
+	/**
+	 * @return number of terms.
+	 * @throws IOException if the writer stays inside a change.
+	 */
+	public int size() throws IOException {
+		for (int retry = 0;; retry++) {
+			MappedByteBuffer map = current();
+			long sequence = (long) LONGS.getAcquire(map, SEQUENCE);
+			int terms = map.getInt(TERMS);
+			if (stable(map, sequence))
+				return terms;
+			backOff(retry);
+		}
+	}
+
+	/**
+	 * @param term word to look for.
+	 * @return number of documents with the word, 0 if never seen.
+	 * @throws IOException if the writer stays inside a change.
+	 */
+	public int docFreq(String term) throws IOException {
+		int hash = term.hashCode();
+		for (int retry = 0;; retry++) {
+			MappedByteBuffer map = current();
+			long sequence = (long) LONGS.getAcquire(map, SEQUENCE);
+			int slot = find(map, term, hash);
+			int df = slot < 0 ? 0 : map.getInt(slot + 12);
+			if (stable(map, sequence))
+				return df;
+			backOff(retry);
+		}
+	}
+
+	/**
+	 * Count one more document. Only the writer can add.
+	 *
+	 * @param words different words of the document.
+	 * @param n number of words.
+	 * @throws IOException
+	 */
+	public synchronized void addDocument(String[] words, int n) throws IOException {
+		if (!writer)
+			throw new IllegalStateException("read only " + file);
+		ensureRoom(words, n);
+		MappedByteBuffer map = this.map;
+		long sequence = map.getLong(SEQUENCE);
+		LONGS.setOpaque(map, SEQUENCE, sequence + 1);
+		VarHandle.storeStoreFence();
+		for (int k = 0; k < n; k++) {
+			add(map, words[k], 1);
+		}
+		map.putLong(DOCUMENTS, map.getLong(DOCUMENTS) + 1);
+		LONGS.setRelease(map, SEQUENCE, sequence + 2);
+	}
+
+	private static void add(MappedByteBuffer map, String term, int df) {
+		int hash = term.hashCode();
+		int slot = find(map, term, hash);
+		if (slot >= 0) {
+			map.putInt(slot + 12, map.getInt(slot + 12) + df);
+			return;
+		}
+		// append the chars, then fill the empty slot find stopped at
+		int used = map.getInt(CHARS_USED);
+		int base = HEADER + map.getInt(SLOTS) * SLOT;
+		for (int i = 0; i < term.length(); i++) {
+			map.putChar(base + (used + i) * 2, term.charAt(i));
+		}
+		slot = -slot - 1;
+		map.putInt(slot, hash);
+		map.putInt(slot + 4, used);
+		map.putInt(slot + 8, term.length());
+		map.putInt(slot + 12, df);
+		map.putInt(CHARS_USED, used + term.length());
+		map.putInt(TERMS, map.getInt(TERMS) + 1);
+	}
+
+	/**
+	 * @return position of the slot of the term, or -(position of the empty slot) - 1.
+	 */
+	private static int find(MappedByteBuffer map, String term, int hash) {
+		int slots = map.getInt(SLOTS);
+		int chars = map.getInt(CHARS);
+		int base = HEADER + slots * SLOT;
+		int i = (hash ^ (hash >>> 16)) & (slots - 1);
+		// a reader may see a table in change, the loop ends anyway and the result is retried
+		for (int probe = 0; probe < slots; probe++, i = (i + 1) & (slots - 1)) {
+			int slot = HEADER + i * SLOT;
+			if (map.getInt(slot + 12) == 0)
+				return -slot - 1;
+			if (map.getInt(slot) == hash && equals(map, base, chars, map.getInt(slot + 4), map.getInt(slot + 8), term))
+				return slot;
+		}
+		return Integer.MIN_VALUE;
+	}
+
+	private static boolean equals(MappedByteBuffer map, int base, int chars, int offset, int length, String term) {
+		if (length != term.length() || offset < 0 || offset > chars - length)
+			return false;
+		for (int i = 0; i < length; i++) {
+			if (map.getChar(base + (offset + i) * 2) != term.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean stable(MappedByteBuffer map, long sequence) {
+		VarHandle.acquireFence();
+		return (sequence & 1) == 0 && (long) LONGS.getOpaque(map, SEQUENCE) == sequence;
+	}
+
+	/**
+	 * Wait for the writer to end its change, spinning first, then yielding, so a writer on the
+	 * same cpu can go on.
+	 *
+	 * @throws IOException after RETRIES, the writer died inside a change or hangs.
+	 */
+	private void backOff(int retry) throws IOException {
+		if (retry >= RETRIES)
+			throw new IOException("term stats stay inside a change, its writer may have died: " + file);
+		if (retry < SPINS)
+			Thread.onSpinWait();
+		else
+			Thread.yield();
+	}
+
+	/**
+	 * The mapping to read, mapped again if the writer replaced the file.
+	 */
+	private MappedByteBuffer current() throws IOException {
+		MappedByteBuffer map = this.map;
+		if (writer || (int) INTS.getAcquire(map, SUPERSEDED) == 0)
+			return map;
+		synchronized (this) {
+			if (this.map == map) {
+				this.map = mapExisting(file, FileChannel.MapMode.READ_ONLY);
+			}
+			return this.map;
+		}
+	}
+
+	/**
+	 * Grow the file so that the words of a document fit, at most half the slots are used.
+	 */
+	private void ensureRoom(String[] words, int n) throws IOException {
+		MappedByteBuffer map = this.map;
+		int slots = map.getInt(SLOTS), chars = map.getInt(CHARS);
+		long needChars = map.getInt(CHARS_USED);
+		for (int k = 0; k < n; k++) {
+			needChars += words[k].length();
+		}
+		long needSlots = (long) map.getInt(TERMS) + n;
+		if (needSlots * 2 <= slots && needChars <= chars)
+			return;
+		while (needSlots * 2 > slots)
+			slots *= 2;
+		while (needChars > chars)
+			chars *= 2;
+		if (size(slots, chars) > Integer.MAX_VALUE)
+			throw new IOException("term stats can't grow over 2GB: " + file);
+
+		Path tmp = Paths.get(file + ".tmp");
+		Files.deleteIfExists(tmp);
+		MappedByteBuffer grown = create(tmp, slots, chars);
+		int oldSlots = map.getInt(SLOTS);
+		int oldBase = HEADER + oldSlots * SLOT;
+		for (int i = 0; i < oldSlots; i++) {
+			int slot = HEADER + i * SLOT;
+			int df = map.getInt(slot + 12);
+			if (df == 0)
+				continue;
+			char[] term = new char[map.getInt(slot + 8)];
+			for (int c = 0; c < term.length; c++) {
+				term[c] = map.getChar(oldBase + (map.getInt(slot + 4) + c) * 2);
+			}
+			add(grown, new String(term), df);
+		}
+		grown.putLong(DOCUMENTS, map.getLong(DOCUMENTS));
+		grown.force();
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		INTS.setRelease(map, SUPERSEDED, 1);
+		this.map = grown;
+	}
+
+	/**
+	 * Write the changes to disk and release the writer lock.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (writer) {
+			map.force();
+			lock.release();
+			lockChannel.close();
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package adb;
+
+/**
+ * Class TermWeighting: How a word weighs in a document, split in a tf part that only depends
+ * on the document and an idf part that depends on the collection. The tf part is kept in the
+ * running sums of RocchioState, so it can not change with the collection; BM25 and pivoted
+ * normalization take the average length as a parameter instead of measuring it.
+ * The tf part has to grow with tf and not grow with the length, InvertedIndex bounds scores
+ * with it. Implementations are immutable and shared, WeightTable caches their values.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public interface TermWeighting {
+	/** words in title and summary of a Bing result, stop words included, about 30 on average. */
+	double AVERAGE_LENGTH = 30;
+
+	/** 1 + ln(tf) and log10(1 + N / df), the weighting of the README. */
+	TermWeighting LOG_TF_IDF = new TermWeighting() {
+		@Override
+		public double tf(int tf, int length) {
+			return 1 + Math.log(tf);
+		}
+
+		@Override
+		public double queryTf(int tf) {
+			return 1 + Math.log(tf);
+		}
+
+		@Override
+		public double idf(long df, long documents) {
+			return Math.log10(1 + (double) documents / df);
+		}
+
+		@Override
+		public String toString() {
+			return "log";
+		}
+	};
+
+	/**
+	 * @param tf frequency of the word in the document, at least 1.
+	 * @param length words in the document before stop word elimination.
+	 * @return weight of the word in the document without idf.
+	 */
+	double tf(int tf, int length);
+
+	/**
+	 * @param tf frequency of the word in the query, at least 1.
+	 * @return weight of the word in the query without idf.
+	 */
+	double queryTf(int tf);
+
+	/**
+	 * @param df documents with the word, at least 1.
+	 * @param documents documents in the collection.
+	 * @return idf of the word.
+	 */
+	double idf(long df, long documents);
+
+	/**
+	 * BM25 with the idf of the README, which stays positive for words in most documents.
+	 *
+	 * @param k1 how fast tf saturates.
+	 * @param b how much the length counts, from 0 to 1.
+	 * @param averageLength length a document is compared with.
+	 */
+	static TermWeighting bm25(double k1, double b, double averageLength) {
+		return new TermWeighting() {
+			@Override
+			public double tf(int tf, int length) {
+				return tf * (k1 + 1) / (tf + k1 * (1 - b + b * length / averageLength));
+			}
+
+			@Override
+			public double queryTf(int tf) {
+				return tf * (k1 + 1) / (tf + k1);
+			}
+
+			@Override
+			public double idf(long df, long documents) {
+				return LOG_TF_IDF.idf(df, documents);
+			}
+
+			@Override
+			public String toString() {
+				return "bm25:" + k1 + "," + b + "," + averageLength;
+			}
+		};
+	}
+
+	/**
+	 * Log tf over the pivoted length normalization (1 - slope) + slope * length / pivot.
+	 *
+	 * @param slope how much the length counts, from 0 to 1.
+	 * @param pivot length where the normalization is 1.
+	 */
+	static TermWeighting pivoted(double slope, double pivot) {
+		return new TermWeighting() {
+			@Override
+			public double tf(int tf, int length) {
+				return (1 + Math.log(tf)) / (1 - slope + slope * length / pivot);
+			}
+
+			@Override
+			public double queryTf(int tf) {
+				return 1 + Math.log(tf);
+			}
+
+			@Override
+			public double idf(long df, long documents) {
+				return LOG_TF_IDF.idf(df, documents);
+			}
+
+			@Override
+			public String toString() {
+				return "pivoted:" + slope + "," + pivot;
+			}
+		};
+	}
+
+	/**
+	 * @param spec "log", "bm25[:k1,b,averageLength]" or "pivoted[:slope,pivot]".
+	 * @return the weighting, parameters left out take their usual values.
+	 */
+	static TermWeighting parse(String spec) {
+		String[] parts = spec.split(":", 2);
+		String[] args = parts.length > 1 ? parts[1].split(",") : new String[0];
+		switch (parts[0].toLowerCase()) {
+		case "log":
+			return LOG_TF_IDF;
+		case "bm25":
+			return bm25(arg(args, 0, 1.2), arg(args, 1, 0.75), arg(args, 2, AVERAGE_LENGTH));
+		case "pivoted":
+			return pivoted(arg(args, 0, 0.2), arg(args, 1, AVERAGE_LENGTH));
+		default:
+			throw new IllegalArgumentException("unknown weighting " + spec);
+		}
+	}
+
+	private static double arg(String[] args, int i, double defaultValue) {
+		return i < args.length ? Double.parseDouble(args[i]) : defaultValue;
+	}
+}
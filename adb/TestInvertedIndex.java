@@ -0,0 +1,188 @@
+package adb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Class TestInvertedIndex: checks the MaxScore search of InvertedIndex against scoring every
+ * live document, over random documents with removals among the adds, so the lists are
+ * compacted and the doc ids numbered again many times, and with copies of documents, so
+ * scores tie. A weighting with whole numbers gives exact scores, so the order of ties is
+ * checked too; the real weightings are checked up to rounding.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public class TestInvertedIndex {
+	/** whole numbers, grows with tf and not with the length, as InvertedIndex needs. */
+	private static final TermWeighting WHOLE = new TermWeighting() {
+		@Override
+		public double tf(int tf, int length) {
+			return 4 * tf - Math.min(length / 10, 3);
+		}
+
+		@Override
+		public double queryTf(int tf) {
+			return tf;
+		}
+
+		@Override
+		public double idf(long df, long documents) {
+			return 1;
+		}
+
+		@Override
+		public String toString() {
+			return "whole";
+		}
+	};
+
+	private static int bad;
+	private static int compactions;
+
+	public static void main(String[] args) {
+		Random random = new Random(args.length > 0 ? Long.parseLong(args[0]) : 7);
+		TermWeighting[] weightings = { WHOLE, TermWeighting.LOG_TF_IDF, TermWeighting.parse("bm25") };
+		for (int trial = 0; trial < 500; trial++) {
+			trial(random, weightings[trial % weightings.length]);
+		}
+		System.out.println(compactions + " compactions");
+		System.out.println(bad == 0 ? "ok" : bad + " differ");
+		if (bad > 0)
+			System.exit(1);
+	}
+
+	private static void trial(Random random, TermWeighting weighting) {
+		InvertedIndex index = new InvertedIndex();
+		int vocabulary = 20 + random.nextInt(200);
+		List<Map<Integer, Integer>> words = new ArrayList<>(); // by key, the order of the adds
+		List<Integer> lengths = new ArrayList<>();
+		List<Integer> docOf = new ArrayList<>(); // key : doc id, -1 once removed
+		List<Integer> keyOf = new ArrayList<>(); // doc id : key, -1 once removed
+		int adds = 1 + random.nextInt(600);
+		double removals = 0.3 + 0.4 * random.nextDouble(); // chance of one more removal after an add
+		for (int key = 0; key < adds; key++) {
+			Map<Integer, Integer> tf;
+			int length;
+			if (key > 0 && random.nextInt(4) == 0) {
+				// a copy, it ties with the original
+				int original = random.nextInt(key);
+				tf = words.get(original);
+				length = lengths.get(original);
+			} else {
+				tf = new TreeMap<>();
+				for (int w = 1 + random.nextInt(20); w > 0; w--) {
+					int id = (int) Math.abs(random.nextGaussian() * vocabulary / 3) % vocabulary;
+					tf.merge(id, random.nextInt(8) == 0 ? 1 + random.nextInt(30) : 1, Integer::sum);
+				}
+				length = tf.size() + random.nextInt(60);
+			}
+			int[] ids = new int[tf.size()], counts = new int[tf.size()];
+			int n = 0;
+			for (Map.Entry<Integer, Integer> entry : tf.entrySet()) {
+				ids[n] = entry.getKey();
+				counts[n++] = entry.getValue();
+			}
+			words.add(tf);
+			lengths.add(length);
+			docOf.add(index.add(ids, counts, n, length));
+			keyOf.add(key);
+			if (docOf.get(key) != keyOf.size() - 1)
+				fail("doc id " + docOf.get(key) + " of the " + keyOf.size() + "th document");
+
+			// removals come in runs, so the removed documents get more than the live ones
+			while (random.nextDouble() < removals) {
+				int victim = random.nextInt(key + 1);
+				int doc = docOf.get(victim);
+				if (doc < 0)
+					continue;
+				docOf.set(victim, -1);
+				keyOf.set(doc, -1);
+				int[] remap = index.remove(doc);
+				if (remap != null) {
+					compactions++;
+					List<Integer> kept = new ArrayList<>();
+					for (int old = 0; old < remap.length; old++) {
+						if (remap[old] >= 0) {
+							docOf.set(keyOf.get(old), remap[old]);
+							kept.add(keyOf.get(old));
+						}
+					}
+					keyOf = kept;
+				}
+			}
+		}
+		int live = (int) docOf.stream().filter(doc -> doc >= 0).count();
+		if (index.size() != live)
+			fail("size " + index.size() + " != " + live);
+		if (keyOf.size() > 2 * live + 16)
+			fail(keyOf.size() + " doc ids for " + live + " documents");
+
+		WeightTable table = new WeightTable(weighting);
+		for (int q = 0; q < 10; q++) {
+			TreeMap<Integer, Double> query = new TreeMap<>();
+			for (int j = 1 + random.nextInt(12); j > 0; j--) {
+				query.put(random.nextInt(vocabulary), random.nextInt(4) == 0 ? 0.0 : 1.0 + random.nextInt(4));
+			}
+			int[] ids = new int[query.size()];
+			double[] values = new double[query.size()];
+			int n = 0;
+			for (Map.Entry<Integer, Double> entry : query.entrySet()) {
+				ids[n] = entry.getKey();
+				values[n++] = entry.getValue();
+			}
+			int k = 1 + random.nextInt(15);
+
+			// every live document with a word of the query, ties by age
+			double[] expected = new double[words.size()];
+			TopK top = new TopK(k, TopK.LOWER_ID);
+			for (int key = 0; key < words.size(); key++) {
+				if (docOf.get(key) < 0)
+					continue;
+				boolean any = false;
+				for (Map.Entry<Integer, Integer> entry : words.get(key).entrySet()) {
+					Double weight = query.get(entry.getKey());
+					if (weight != null && weight > 0) {
+						expected[key] += weight * table.tf(entry.getValue(), lengths.get(key));
+						any = true;
+					}
+				}
+				if (any)
+					top.offer(key, expected[key]);
+			}
+			int[] expectedKeys = new int[k], docs = new int[k];
+			double[] expectedScores = new double[k], scores = new double[k];
+			int expectedFound = top.drain(expectedKeys, expectedScores);
+			int found = index.search(new SparseVector(ids, values, n), table, k, docs, scores);
+
+			if (found != expectedFound) {
+				fail(weighting + ": found " + found + " != " + expectedFound);
+				continue;
+			}
+			for (int i = 0; i < found; i++) {
+				int key = keyOf.get(docs[i]);
+				boolean same = weighting == WHOLE ? key == expectedKeys[i] && scores[i] == expectedScores[i]
+						: Math.abs(scores[i] - expectedScores[i]) < 1e-9 && Math.abs(scores[i] - expected[key]) < 1e-9;
+				if (!same) {
+					int[] actualKeys = new int[found];
+					for (int j = 0; j < found; j++) {
+						actualKeys[j] = keyOf.get(docs[j]);
+					}
+					fail(weighting + ": " + Arrays.toString(actualKeys) + " "
+							+ Arrays.toString(Arrays.copyOf(scores, found)) + " != "
+							+ Arrays.toString(Arrays.copyOf(expectedKeys, found)) + " "
+							+ Arrays.toString(Arrays.copyOf(expectedScores, found)));
+					break;
+				}
+			}
+		}
+	}
+
+	private static void fail(String what) {
+		if (bad++ < 10)
+			System.out.println(what);
+	}
+}
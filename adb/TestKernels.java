@@ -0,0 +1,137 @@
+package adb;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Class TestKernels: checks that DenseKernels.best() gives the same bits as the scalar loops,
+ * the fused rocchio loop the same as the passes it replaces, and the dense centroid and qm of
+ * RocchioState the same as the sparse ones, an empty group too. Run it with and without
+ * --add-modules jdk.incubator.vector to check both.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public class TestKernels {
+	public static void main(String[] args) {
+		DenseKernels kernels = DenseKernels.best();
+		System.out.println("kernels: " + kernels);
+		Random random = new Random(args.length > 0 ? Long.parseLong(args[0]) : 7);
+		int bad = 0;
+		// lengths around the lane counts, for the tails
+		int[] lengths = { 0, 1, 3, 4, 7, 8, 9, 15, 16, 17, 31, 33, 100, 1000, 4099 };
+		for (int n : lengths) {
+			double[] sum = random(random, n), idf = random(random, n);
+			double[] q = random(random, n), dr = random(random, n), dnr = random(random, n);
+			double num = 1 + random.nextInt(20), c = random.nextDouble();
+
+			double[] expected = new double[n], actual = new double[n];
+			DenseKernels.SCALAR.centroid(sum, idf, num, expected, n);
+			kernels.centroid(sum, idf, num, actual, n);
+			bad += compare("centroid", n, expected, actual);
+
+			expected = sum.clone();
+			actual = sum.clone();
+			DenseKernels.SCALAR.vectorMulConst(expected, c, n);
+			kernels.vectorMulConst(actual, c, n);
+			bad += compare("vectorMulConst", n, expected, actual);
+
+			DenseKernels.SCALAR.combine(q, dr, dnr, expected, n);
+			kernels.combine(q, dr, dnr, actual, n);
+			bad += compare("combine", n, expected, actual);
+
+			double[] dnrSum = random(random, n);
+			double dnrNum = 1 + random.nextInt(20);
+			DenseKernels.SCALAR.centroid(sum, idf, num, dr, n);
+			DenseKernels.SCALAR.vectorMulConst(dr, RelevanceFeedback.BETA, n);
+			DenseKernels.SCALAR.centroid(dnrSum, idf, dnrNum, dnr, n);
+			DenseKernels.SCALAR.vectorMulConst(dnr, RelevanceFeedback.GAMMA, n);
+			DenseKernels.SCALAR.combine(q, dr, dnr, expected, n);
+			for (DenseKernels fused : new DenseKernels[] { DenseKernels.SCALAR, kernels }) {
+				fused.rocchio(q, sum, num, RelevanceFeedback.BETA, dnrSum, dnrNum, RelevanceFeedback.GAMMA, idf, actual, n);
+				bad += compare("rocchio " + fused, n, expected, actual);
+			}
+		}
+
+		RocchioState state = new RocchioState();
+		int terms = 500;
+		for (int d = 0; d < 200; d++) {
+			int nnz = 1 + random.nextInt(40);
+			int[] ids = new int[nnz];
+			double[] weights = new double[nnz];
+			for (int k = 0; k < nnz; k++) {
+				ids[k] = random.nextInt(terms);
+				weights[k] = 1 + Math.log(1 + random.nextInt(4));
+			}
+			ids = Arrays.stream(ids).distinct().toArray();
+			state.addDocument(SparseVector.of(ids, weights, ids.length), random.nextBoolean());
+		}
+		double[] idf = Arrays.stream(random(random, terms + 10)).map(Math::abs).toArray(); // idf is never negative
+		for (boolean isRelevant : new boolean[] { true, false }) {
+			SparseVector sparse = state.centroid(isRelevant, idf);
+			double[] expected = new double[idf.length];
+			sparse.addTo(expected, 1);
+			double[] actual = new double[idf.length];
+			state.centroid(isRelevant, idf, actual, idf.length, kernels);
+			bad += compare("dense centroid", idf.length, expected, actual);
+		}
+
+		bad += compareRocchio(state, idf, kernels);
+		RocchioState relevantOnly = new RocchioState();
+		relevantOnly.addDocument(SparseVector.of(new int[] { 3, 1, 4 }, new double[] { 1, 2, 1 }, 3), true);
+		bad += compareRocchio(relevantOnly, idf, kernels);
+
+		System.out.println(bad == 0 ? "ok" : bad + " differ");
+		if (bad > 0)
+			System.exit(1);
+	}
+
+	/**
+	 * qm of RocchioState.rocchio against the sparse centroids merged.
+	 */
+	private static int compareRocchio(RocchioState state, double[] idf, DenseKernels kernels) {
+		int n = idf.length;
+		double beta = RelevanceFeedback.BETA, gamma = RelevanceFeedback.GAMMA;
+		SparseVector q0 = new SparseVector(new int[] { 0, 2, 7 }, new double[] { 1, 0.5, 2 }, 3);
+		SparseVector dr = state.centroid(true, idf).scale(beta), dnr = state.centroid(false, idf).scale(gamma);
+		double[] expected = new double[n];
+		SparseVector.add(q0, SparseVector.add(dr, dnr, -1), 1).positive().addTo(expected, 1);
+		double[] q = new double[n], actual = new double[n];
+		q0.addTo(q, 1);
+		state.rocchio(q, idf, beta, gamma, actual, n, kernels);
+		return compare("dense qm", n, expected, actual);
+	}
+
+	/**
+	 * random weights with zeros, signed zeros and negative values among them.
+	 */
+	private static double[] random(Random random, int n) {
+		double[] v = new double[n];
+		for (int i = 0; i < n; i++) {
+			switch (random.nextInt(8)) {
+			case 0:
+				v[i] = 0;
+				break;
+			case 1:
+				v[i] = -0.0;
+				break;
+			case 2:
+				v[i] = -random.nextDouble();
+				break;
+			default:
+				v[i] = random.nextDouble() * 10;
+			}
+		}
+		return v;
+	}
+
+	private static int compare(String kernel, int n, double[] expected, double[] actual) {
+		int bad = 0;
+		for (int i = 0; i < n; i++) {
+			if (Double.doubleToLongBits(expected[i]) != Double.doubleToLongBits(actual[i])) {
+				if (bad++ == 0)
+					System.out.println(kernel + " n=" + n + " at " + i + ": " + expected[i] + " != " + actual[i]);
+			}
+		}
+		return bad;
+	}
+}
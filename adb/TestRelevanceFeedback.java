@@ -0,0 +1,131 @@
+package adb;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Class TestRelevanceFeedback: checks that expansion stays finite when it is called with
+ * nothing new judged, again after an expansion, after a round of results all seen before and
+ * after a round without a relevant result, on the recorded sessions of transcript.txt. With
+ * a word limit under the words of the query alone, the documents still keep up to the limit
+ * and the query words are not forgotten.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public class TestRelevanceFeedback {
+	private static final int NUMBER = 2; // words added a round
+	private static final int MAX_TERMS = 120;
+	private static final int MADE_UP = 150; // words of the query no document has, more than MAX_TERMS
+
+	private static int bad;
+
+	public static void main(String[] args) throws Exception {
+		List<List<Transcript.Round>> sessions = Transcript.read(Paths.get(args.length > 0 ? args[0] : "transcript.txt"));
+		sessions.removeIf(rounds -> rounds.isEmpty() || rounds.get(0).getResults().isEmpty());
+		for (List<Transcript.Round> rounds : sessions) {
+			expansions(rounds);
+			limited(rounds);
+		}
+
+		System.out.println(bad == 0 ? "ok" : bad + " differ");
+		if (bad > 0)
+			System.exit(1);
+	}
+
+	private static void check(boolean ok, String what) {
+		if (!ok && bad++ < 10)
+			System.out.println("failed: " + what);
+	}
+
+	private static void expansions(List<Transcript.Round> rounds) {
+		RelevanceFeedback feedback = new RelevanceFeedback(StopWords.shared());
+		feedback.setVerbose(false);
+		String[] query = rounds.get(0).getQuery().split(" ");
+		List<SingleResult> first = rounds.get(0).getResults();
+
+		// before anything is judged
+		finite(feedback.expansion(NUMBER, query), "nothing judged", true);
+		feedback.addJudgments(first);
+		finite(feedback.expansion(NUMBER, query), "first round", false);
+		// again, and with the same results, which are not judged twice
+		finite(feedback.expansion(NUMBER, query), "second call", true);
+		feedback.addJudgments(first);
+		finite(feedback.expansion(NUMBER, query), "results seen before", true);
+
+		// a round without a relevant result, then one with
+		feedback.addJudgments(judged(rounds, false));
+		finite(feedback.expansion(NUMBER, query), "no relevant result", false);
+		feedback.addJudgments(judged(rounds, true));
+		finite(feedback.expansion(NUMBER, query), "after no relevant result", false);
+	}
+
+	private static void limited(List<Transcript.Round> rounds) {
+		RelevanceFeedback feedback = new RelevanceFeedback(StopWords.shared());
+		feedback.setVerbose(false);
+		feedback.setHistoryLimit(0, MAX_TERMS, RelevanceFeedback.Eviction.AGE);
+		for (Transcript.Round round : rounds) {
+			List<String> words = new ArrayList<>(Arrays.asList(round.getQuery().split(" ")));
+			for (int k = 0; k < MADE_UP; k++) {
+				words.add("madeup" + k);
+			}
+			String[] query = words.toArray(new String[0]);
+			// the query is set before the documents come
+			feedback.expansion(NUMBER, query);
+			feedback.addJudgments(round.getResults());
+
+			Set<Integer> kept = new HashSet<>();
+			int fewest = Integer.MAX_VALUE;
+			for (Term term : feedback.getTerms()) {
+				for (int id : term.getIds()) {
+					kept.add(id);
+				}
+			}
+			for (SingleResult sr : round.getResults()) {
+				fewest = Math.min(fewest, words(sr));
+			}
+			String what = "limit of " + MAX_TERMS + " words, " + round.getQuery();
+			check(kept.size() <= MAX_TERMS, what + ": " + kept.size() + " words of documents kept");
+			check(!feedback.getTerms().isEmpty() || fewest > MAX_TERMS, what + ": every document forgotten");
+			check(feedback.getVocabulary() >= kept.size() + MADE_UP, what + ": words of the query forgotten");
+			finite(feedback.expansion(NUMBER, query), what, false);
+		}
+	}
+
+	/**
+	 * @return different words of a result on its own.
+	 */
+	private static int words(SingleResult sr) {
+		RelevanceFeedback alone = new RelevanceFeedback(StopWords.shared());
+		alone.addJudgments(Arrays.asList(new SingleResult(sr.getUrl(), sr.getTitle(), sr.getSummary())));
+		return alone.getVocabulary();
+	}
+
+	/**
+	 * copies of the results of the other rounds, not seen before, all with one relevance.
+	 */
+	private static List<SingleResult> judged(List<Transcript.Round> rounds, boolean relevant) {
+		List<SingleResult> results = new ArrayList<>();
+		for (Transcript.Round round : rounds) {
+			for (SingleResult sr : round.getResults()) {
+				SingleResult copy = new SingleResult(sr.getUrl() + (relevant ? "#relevant" : "#not"), sr.getTitle(),
+						sr.getSummary());
+				copy.setIsRelevant(relevant);
+				results.add(copy);
+			}
+		}
+		return results;
+	}
+
+	private static void finite(ExpansionResult result, String what, boolean noDecay) {
+		check(Double.isFinite(result.getPenalty()), what + ": penalty " + result.getPenalty());
+		if (noDecay)
+			check(result.getPenalty() == 1, what + ": penalty " + result.getPenalty() + " without judgments");
+		for (double weight : result.getWeights()) {
+			check(Double.isFinite(weight), what + ": weight " + weight);
+		}
+	}
+}
@@ -0,0 +1,260 @@
+package adb;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class TestSessionManager: checks that the recorded sessions of transcript.txt, run at the same
+ * time from many threads, expand to the same queries as one after another, that rounds over the
+ * limits of a session or of the pool are rejected when submitted, that a round after a failed
+ * one fails with its cause, and that eviction takes idle sessions only, also when rounds are
+ * submitted while it runs.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public class TestSessionManager {
+	private static final int NUMBER = 2; // words added a round
+	private static final long WAIT = 30; // seconds a round may take at most
+
+	/**
+	 * Documents that wait for a gate before the round can read them.
+	 */
+	private static class GatedList extends ArrayList<SingleResult> {
+		private static final long serialVersionUID = 1L;
+		private final CountDownLatch started = new CountDownLatch(1);
+		private final CountDownLatch gate = new CountDownLatch(1);
+
+		GatedList(Collection<SingleResult> documents) {
+			super(documents);
+		}
+
+		@Override
+		public Iterator<SingleResult> iterator() {
+			started.countDown();
+			try {
+				gate.await();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			return super.iterator();
+		}
+	}
+
+	private static int bad;
+
+	public static void main(String[] args) throws Exception {
+		List<List<Transcript.Round>> sessions = Transcript.read(Paths.get(args.length > 0 ? args[0] : "transcript.txt"));
+		sessions.removeIf(rounds -> rounds.isEmpty() || rounds.get(0).getResults().isEmpty());
+		List<SingleResult> documents = sessions.get(0).get(0).getResults();
+
+		concurrent(sessions);
+		rejected(documents);
+		failed(documents);
+		evicted(documents);
+		evictedWhileSubmitted(documents);
+
+		System.out.println(bad == 0 ? "ok" : bad + " differ");
+		if (bad > 0)
+			System.exit(1);
+	}
+
+	private static void check(boolean ok, String what) {
+		if (!ok) {
+			bad++;
+			System.out.println("failed: " + what);
+		}
+	}
+
+	/**
+	 * Every recorded session on its own RelevanceFeedback, then all of them at once on the manager.
+	 */
+	private static void concurrent(List<List<Transcript.Round>> sessions) throws Exception {
+		List<List<String>> expected = new ArrayList<>();
+		for (List<Transcript.Round> rounds : sessions) {
+			RelevanceFeedback feedback = new RelevanceFeedback(StopWords.shared());
+			feedback.setVerbose(false);
+			List<String> queries = new ArrayList<>();
+			for (Transcript.Round round : rounds) {
+				queries.add(feedback.queryExpansion(NUMBER, round.getResults(), round.getQuery().split(" ")));
+			}
+			expected.add(queries);
+		}
+
+		SessionManager manager = new SessionManager(4, 1024, TimeUnit.MINUTES.toMillis(1), 64);
+		ExecutorService clients = Executors.newFixedThreadPool(8);
+		try {
+			for (int pass = 0; pass < 5; pass++) {
+				List<Future<List<String>>> actual = new ArrayList<>();
+				for (List<Transcript.Round> rounds : sessions) {
+					actual.add(clients.submit(() -> {
+						String id = manager.open();
+						// every round submitted before the first ends
+						List<CompletableFuture<String>> futures = new ArrayList<>();
+						for (Transcript.Round round : rounds) {
+							futures.add(manager.queryExpansion(id, NUMBER, round.getResults(),
+									round.getQuery().split(" ")));
+						}
+						List<String> queries = new ArrayList<>();
+						for (CompletableFuture<String> future : futures) {
+							queries.add(future.get(WAIT, TimeUnit.SECONDS));
+						}
+						manager.close(id);
+						return queries;
+					}));
+				}
+				for (int s = 0; s < sessions.size(); s++) {
+					List<String> queries = actual.get(s).get();
+					check(queries.equals(expected.get(s)), "session " + s + ": " + queries + " != " + expected.get(s));
+				}
+			}
+			check(manager.size() == 0, "closed sessions left: " + manager.size());
+		} finally {
+			clients.shutdownNow();
+			manager.shutdown();
+		}
+	}
+
+	/**
+	 * One thread, room for one more round, at most two rounds a session.
+	 */
+	private static void rejected(List<SingleResult> documents) throws Exception {
+		SessionManager manager = new SessionManager(1, 1, TimeUnit.MINUTES.toMillis(1), 2);
+		try {
+			String a = manager.open(), b = manager.open();
+			GatedList gated = new GatedList(documents);
+			CompletableFuture<String> first = manager.queryExpansion(a, NUMBER, gated, new String[] { "taj" });
+			gated.started.await();
+			CompletableFuture<String> second = manager.queryExpansion(a, NUMBER, documents, new String[] { "taj" });
+			check(rejects(() -> manager.queryExpansion(a, NUMBER, documents, new String[] { "taj" })),
+					"third round of a session taken");
+			check(rejects(() -> manager.queryExpansion(b, NUMBER, documents, new String[] { "taj" })),
+					"round over the pool taken");
+			gated.gate.countDown();
+			first.get(WAIT, TimeUnit.SECONDS);
+			second.get(WAIT, TimeUnit.SECONDS);
+			// rounds are counted as finished right after they complete, give it a moment
+			CompletableFuture<String> later = null;
+			for (int retry = 0; later == null && retry < 100; retry++) {
+				try {
+					later = manager.queryExpansion(b, NUMBER, documents, new String[] { "taj" });
+				} catch (RejectedExecutionException ex) {
+					Thread.sleep(10);
+				}
+			}
+			check(later != null && later.get(WAIT, TimeUnit.SECONDS) != null, "round after the others ended");
+		} finally {
+			manager.shutdown();
+		}
+	}
+
+	private static boolean rejects(Runnable submit) {
+		try {
+			submit.run();
+			return false;
+		} catch (RejectedExecutionException ex) {
+			return true;
+		}
+	}
+
+	private static void failed(List<SingleResult> documents) throws Exception {
+		SessionManager manager = new SessionManager(2, 16, TimeUnit.MINUTES.toMillis(1));
+		try {
+			String id = manager.open();
+			IllegalStateException broken = new IllegalStateException("broken documents");
+			List<SingleResult> failing = new ArrayList<SingleResult>(documents) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				public Iterator<SingleResult> iterator() {
+					throw broken;
+				}
+			};
+			CompletableFuture<String> first = manager.queryExpansion(id, NUMBER, failing, new String[] { "taj" });
+			CompletableFuture<String> second = manager.queryExpansion(id, NUMBER, documents, new String[] { "taj" });
+			check(cause(first) == broken, "failed round: " + cause(first));
+			check(cause(second) == broken, "round after a failed one: " + cause(second));
+		} finally {
+			manager.shutdown();
+		}
+	}
+
+	private static Throwable cause(CompletableFuture<String> round) throws Exception {
+		try {
+			round.get(WAIT, TimeUnit.SECONDS);
+			return null;
+		} catch (ExecutionException ex) {
+			return ex.getCause();
+		}
+	}
+
+	/**
+	 * A session with a round running stays, an idle one goes and takes no more rounds.
+	 */
+	private static void evicted(List<SingleResult> documents) throws Exception {
+		SessionManager manager = new SessionManager(2, 16, 50);
+		try {
+			String id = manager.open();
+			GatedList gated = new GatedList(documents);
+			CompletableFuture<String> round = manager.queryExpansion(id, NUMBER, gated, new String[] { "taj" });
+			gated.started.await();
+			Thread.sleep(300);
+			check(manager.size() == 1, "session evicted with a round running");
+			gated.gate.countDown();
+			round.get(WAIT, TimeUnit.SECONDS);
+			Thread.sleep(300);
+			check(manager.size() == 0, "idle session not evicted");
+			try {
+				manager.queryExpansion(id, NUMBER, documents, new String[] { "taj" });
+				check(false, "round taken by an evicted session");
+			} catch (IllegalArgumentException ex) {
+				// evicted
+			}
+		} finally {
+			manager.shutdown();
+		}
+	}
+
+	/**
+	 * Rounds submitted while the evictor runs every millisecond: each one is either refused or
+	 * runs and ends.
+	 */
+	private static void evictedWhileSubmitted(List<SingleResult> documents) throws Exception {
+		SessionManager manager = new SessionManager(2, 4096, 1, 4096);
+		Random random = new Random(7);
+		int taken = 0, refused = 0;
+		try {
+			List<CompletableFuture<String>> rounds = new ArrayList<>();
+			for (int i = 0; i < 2000; i++) {
+				String id = manager.open();
+				if (random.nextBoolean())
+					Thread.sleep(random.nextInt(3));
+				try {
+					rounds.add(manager.queryExpansion(id, NUMBER, documents, new String[] { "taj" }));
+					taken++;
+				} catch (IllegalArgumentException ex) {
+					refused++;
+				}
+			}
+			for (CompletableFuture<String> round : rounds) {
+				check(round.get(WAIT, TimeUnit.SECONDS) != null, "round of a session being evicted");
+			}
+			Thread.sleep(100);
+			check(manager.size() == 0, manager.size() + " idle sessions left");
+		} finally {
+			manager.shutdown();
+		}
+		System.out.println("eviction race: " + taken + " rounds taken, " + refused + " refused");
+	}
+}
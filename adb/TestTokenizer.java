@@ -0,0 +1,108 @@
+package adb;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Class TestTokenizer: checks that Tokenizer gives the same words, tf and length as the regex
+ * split it replaced, for every code point between two words and alone, and for random
+ * strings of delimiters, letters and the chars whose lower case needs context, in the
+ * default locale and in tr, az and lt, where lower case differs from per char lower case.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public class TestTokenizer {
+	private static final Pattern DELIMITER = Pattern.compile("[\\s\\p{Punct}|]+", Pattern.UNICODE_CHARACTER_CLASS);
+	// letters, delimiters, the chars of needsContext, a surrogate pair and a combining mark
+	private static final String[] PIECES = { "a", "B", "z", "taj", "the", "and", " ", "  ", "\t", "\n", " ",
+			"　", ".", ",", "-", "|", "'", "’", "“", "_", "(", "$", "+", "1", "İ", "Σ", "σ",
+			"ß", "I", "i", "ı", "𝐀", "́", "É", "ŉ" };
+
+	public static void main(String[] args) {
+		StopWords stop = StopWords.shared();
+		int randoms = args.length > 0 ? Integer.parseInt(args[0]) : 300000;
+		Locale original = Locale.getDefault();
+		int bad = 0;
+		try {
+			for (Locale locale : new Locale[] { original, new Locale("tr"), new Locale("az"), new Locale("lt") }) {
+				Locale.setDefault(locale);
+				Tokenizer tokenizer = new Tokenizer(stop);
+				TermDictionary dictionary = new TermDictionary();
+				TermCounter counter = new TermCounter();
+				int before = bad;
+				for (int cp = 0; cp <= Character.MAX_CODE_POINT; cp++) {
+					// a word per code point clusters in one table, keep it small
+					if ((cp & 1023) == 0)
+						dictionary.clear();
+					String c = new String(Character.toChars(cp));
+					bad += check(tokenizer, dictionary, counter, stop, "taj" + c + "mahal", "x" + c);
+					bad += check(tokenizer, dictionary, counter, stop, c, c + "a");
+				}
+				Random random = new Random(7);
+				for (int k = 0; k < randoms; k++) {
+					if ((k & 1023) == 0)
+						dictionary.clear();
+					bad += check(tokenizer, dictionary, counter, stop, random(random), random(random));
+				}
+				System.out.println(locale + ": " + (bad - before) + " differ");
+			}
+		} finally {
+			Locale.setDefault(original);
+		}
+		System.out.println(bad == 0 ? "ok" : bad + " differ");
+		if (bad > 0)
+			System.exit(1);
+	}
+
+	private static String random(Random random) {
+		StringBuilder sb = new StringBuilder();
+		int n = random.nextInt(12);
+		for (int i = 0; i < n; i++) {
+			sb.append(PIECES[random.nextInt(PIECES.length)]);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return 1 if the tokenizer and the regex split disagree, after printing the first few.
+	 */
+	private static int check(Tokenizer tokenizer, TermDictionary dictionary, TermCounter counter, StopWords stop,
+			String title, String summary) {
+		String[] content = DELIMITER.split((title + " " + summary).toLowerCase());
+		TreeMap<String, Integer> expected = new TreeMap<>();
+		for (String word : content) {
+			if (!stop.contains(word))
+				expected.merge(word, 1, Integer::sum);
+		}
+
+		int length = tokenizer.tokenize(title, summary, dictionary, counter);
+		TreeMap<String, Integer> actual = new TreeMap<>();
+		for (int k = 0; k < counter.size(); k++) {
+			actual.put(dictionary.term(counter.id(k)), counter.count(k));
+		}
+		counter.clear();
+
+		if (length == content.length && actual.equals(expected))
+			return 0;
+		if (printed++ < 10) {
+			System.out.println("'" + escape(title) + "' '" + escape(summary) + "': " + content.length + " " + expected
+					+ " != " + length + " " + actual);
+		}
+		return 1;
+	}
+
+	private static int printed;
+
+	private static String escape(String text) {
+		StringBuilder sb = new StringBuilder();
+		for (char c : text.toCharArray()) {
+			if (c < 0x20 || c > 0x7e)
+				sb.append(String.format("\\u%04x", (int) c));
+			else
+				sb.append(c);
+		}
+		return sb.toString();
+	}
+}
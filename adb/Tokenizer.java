@@ -0,0 +1,150 @@
+package adb;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Class Tokenizer: Split title and summary of a document into lower case words in one pass.
+ * Gives the same words as splitting (title + " " + summary).toLowerCase() by
+ * [\s\p{Punct}|]+ in unicode mode, but reuses one char buffer and looks words up
+ * in the dictionary and the stop words by chars, so only new words become Strings.
+ * Not thread safe, every thread needs its own Tokenizer.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public class Tokenizer {
+	// the split we have to agree with, still used when per char lower case is not enough.
+	private static final Pattern DELIMITER = Pattern.compile("[\\s\\p{Punct}|]+", Pattern.UNICODE_CHARACTER_CLASS);
+
+	private final StopWords stop; // stop words, looked up by chars
+	private final boolean localeSensitive; // lower case of the default locale differs from per char lower case
+	private char[] buf; // lower case chars of current word
+	private int len; // length of current word
+	private int words; // words found in current document
+	private boolean leadingEmpty; // document starts with a delimiter, split gives an empty first word
+
+	/**
+	 * @param stopWords stop words, never counted.
+	 */
+	public Tokenizer(StopWords stopWords) {
+		stop = stopWords;
+		String language = Locale.getDefault().getLanguage();
+		localeSensitive = language.equals("tr") || language.equals("az") || language.equals("lt");
+		buf = new char[64];
+	}
+
+	/**
+	 * Count the words of a document that are not stop words.
+	 *
+	 * @param title title of the document.
+	 * @param summary summary of the document.
+	 * @param dictionary every counted word is interned here.
+	 * @param counter tf of the document.
+	 * @return the number of words in document before stop word elimination.
+	 */
+	public int tokenize(String title, String summary, TermDictionary dictionary, TermCounter counter) {
+		title = String.valueOf(title);
+		summary = String.valueOf(summary);
+		if (localeSensitive || needsContext(title) || needsContext(summary))
+			return tokenizeByRegex(title + " " + summary, dictionary, counter);
+
+		len = 0;
+		words = 0;
+		leadingEmpty = false;
+		scan(title, dictionary, counter, true);
+		endWord(dictionary, counter); // the space between title and summary
+		scan(summary, dictionary, counter, false);
+		endWord(dictionary, counter);
+		return words;
+	}
+
+	private void scan(String text, TermDictionary dictionary, TermCounter counter, boolean first) {
+		for (int i = 0; i < text.length();) {
+			int cp = text.codePointAt(i);
+			i += Character.charCount(cp);
+			cp = Character.toLowerCase(cp);
+			if (isDelimiter(cp)) {
+				if (first && i == Character.charCount(text.codePointAt(0)))
+					leadingEmpty = true;
+				endWord(dictionary, counter);
+			} else {
+				append(cp);
+			}
+		}
+		if (first && text.isEmpty())
+			leadingEmpty = true; // title is empty, the text starts with the space
+	}
+
+	private void append(int cp) {
+		if (len + 2 > buf.length)
+			buf = Arrays.copyOf(buf, buf.length * 2);
+		if (Character.isBmpCodePoint(cp)) {
+			buf[len++] = (char) cp;
+		} else {
+			len += Character.toChars(cp, buf, len);
+		}
+	}
+
+	private void endWord(TermDictionary dictionary, TermCounter counter) {
+		if (len == 0)
+			return;
+		if (leadingEmpty) {
+			// split keeps an empty first word, but only when another word follows.
+			leadingEmpty = false;
+			count(buf, 0, 0, dictionary, counter);
+		}
+		count(buf, 0, len, dictionary, counter);
+		len = 0;
+	}
+
+	private void count(char[] word, int off, int length, TermDictionary dictionary, TermCounter counter) {
+		words++;
+		if (!stop.contains(word, off, length))
+			counter.add(dictionary.intern(word, off, length));
+	}
+
+	private int tokenizeByRegex(String text, TermDictionary dictionary, TermCounter counter) {
+		String[] content = DELIMITER.split(text.toLowerCase());
+		words = 0;
+		for (String word : content) {
+			char[] chars = word.toCharArray();
+			count(chars, 0, chars.length, dictionary, counter);
+		}
+		return words;
+	}
+
+	/**
+	 * same chars as [\s\p{Punct}|] in unicode mode.
+	 */
+	static boolean isDelimiter(int cp) {
+		switch (Character.getType(cp)) {
+		case Character.CONNECTOR_PUNCTUATION:
+		case Character.DASH_PUNCTUATION:
+		case Character.START_PUNCTUATION:
+		case Character.END_PUNCTUATION:
+		case Character.INITIAL_QUOTE_PUNCTUATION:
+		case Character.FINAL_QUOTE_PUNCTUATION:
+		case Character.OTHER_PUNCTUATION:
+			return true;
+		default:
+			return cp == '|' || isWhiteSpace(cp);
+		}
+	}
+
+	/**
+	 * unicode White_Space property, which is what \s means in unicode mode.
+	 */
+	private static boolean isWhiteSpace(int cp) {
+		return (cp >= 0x9 && cp <= 0xd) || cp == 0x20 || cp == 0x85 || cp == 0xa0 || cp == 0x1680
+				|| (cp >= 0x2000 && cp <= 0x200a) || cp == 0x2028 || cp == 0x2029 || cp == 0x202f
+				|| cp == 0x205f || cp == 0x3000;
+	}
+
+	/**
+	 * lower case of these chars depends on the chars around them or gives more chars.
+	 */
+	private static boolean needsContext(String text) {
+		return text.indexOf('\u0130') >= 0 || text.indexOf('\u03a3') >= 0;
+	}
+}
@@ -0,0 +1,146 @@
+package adb;
+
+/**
+ * Class TopK: The k ids with the biggest weights, kept in a bounded min heap of primitives,
+ * so picking k words out of n costs n log k instead of sorting all of them.
+ * The root is the worst id kept, a new id only goes in if it beats the root.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public class TopK {
+	/**
+	 * Order of two ids with the same weight, negative if a goes first.
+	 */
+	public interface TieBreak {
+		int compare(int a, int b);
+	}
+
+	/** the smaller id first, the word seen first in the documents. */
+	public static final TieBreak LOWER_ID = Integer::compare;
+
+	private final int k;
+	private final TieBreak tieBreak;
+	private final int[] ids; // heap, ids[0] is the worst id kept
+	private final double[] weights; // weight of ids[i]
+	private int size;
+
+	/**
+	 * @param k number of ids kept at most.
+	 * @param tieBreak order of ids with the same weight.
+	 */
+	public TopK(int k, TieBreak tieBreak) {
+		if (k < 0)
+			throw new IllegalArgumentException("k = " + k);
+		this.k = k;
+		this.tieBreak = tieBreak;
+		ids = new int[k];
+		weights = new double[k];
+	}
+
+	/**
+	 * @param id id to consider.
+	 * @param weight weight of the id.
+	 */
+	public void offer(int id, double weight) {
+		if (size < k) {
+			ids[size] = id;
+			weights[size] = weight;
+			siftUp(size++);
+		} else if (k > 0 && before(id, weight, ids[0], weights[0])) {
+			ids[0] = id;
+			weights[0] = weight;
+			siftDown(0);
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return weight of the worst id kept, the one a new id has to beat when the heap is full.
+	 */
+	public double worst() {
+		if (size == 0)
+			throw new IllegalStateException("empty");
+		return weights[0];
+	}
+
+	/**
+	 * @param id id to look for.
+	 * @return whether the id is kept.
+	 */
+	public boolean contains(int id) {
+		for (int i = 0; i < size; i++) {
+			if (ids[i] == id)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Take the kept ids, best first. The heap is empty afterwards.
+	 *
+	 * @param outIds filled with the ids, at least size() long.
+	 * @param outWeights filled with their weights, at least size() long.
+	 * @return number of ids.
+	 */
+	public int drain(int[] outIds, double[] outWeights) {
+		int n = size;
+		// popping the worst fills the arrays from the back
+		while (size > 0) {
+			outIds[size - 1] = ids[0];
+			outWeights[size - 1] = weights[0];
+			size--;
+			if (size > 0) {
+				ids[0] = ids[size];
+				weights[0] = weights[size];
+				siftDown(0);
+			}
+		}
+		return n;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * @return whether id a with weight wa ranks before id b with weight wb.
+	 */
+	private boolean before(int a, double wa, int b, double wb) {
+		return wa > wb || (wa == wb && tieBreak.compare(a, b) < 0);
+	}
+
+	private void siftUp(int i) {
+		int id = ids[i];
+		double weight = weights[i];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!before(ids[parent], weights[parent], id, weight))
+				break;
+			ids[i] = ids[parent];
+			weights[i] = weights[parent];
+			i = parent;
+		}
+		ids[i] = id;
+		weights[i] = weight;
+	}
+
+	private void siftDown(int i) {
+		int id = ids[i];
+		double weight = weights[i];
+		for (int child = 2 * i + 1; child < size; child = 2 * i + 1) {
+			// the worse child
+			if (child + 1 < size && before(ids[child], weights[child], ids[child + 1], weights[child + 1]))
+				child++;
+			if (!before(id, weight, ids[child], weights[child]))
+				break;
+			ids[i] = ids[child];
+			weights[i] = weights[child];
+			i = child;
+		}
+		ids[i] = id;
+		weights[i] = weight;
+	}
+}
@@ -0,0 +1,483 @@
+package adb;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Class Transcript: Read and write the rounds QueryCLI logs.
+ * A round is one JSON object per line in transcript.jsonl, with its number, query, precision
+ * and the results with their relevance. transcript.txt is the text view of the same rounds:
+ * a session starts at ROUND 1, every round has its QUERY and the results with their relevance.
+ * Both are read a line at a time, the format is told by the first character.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public class Transcript {
+
+	/**
+	 * Class Round: One logged round, the query and its results.
+	 */
+	public static class Round {
+		private final String query;
+		private final List<SingleResult> results = new ArrayList<>();
+		private int number = 1; // round of the session, from 1
+		private float precision = Float.NaN; // NaN if the round was not judged
+
+		public Round(String query) {
+			this.query = query;
+		}
+
+		/**
+		 * @param number round of the session, from 1.
+		 * @param query query of the round.
+		 * @param precision precision of the round, NaN if it was not judged.
+		 */
+		public Round(int number, String query, float precision) {
+			this.number = number;
+			this.query = query;
+			this.precision = precision;
+		}
+
+		public String getQuery() {
+			return query;
+		}
+
+		public List<SingleResult> getResults() {
+			return results;
+		}
+
+		public int getNumber() {
+			return number;
+		}
+
+		public float getPrecision() {
+			return precision;
+		}
+	}
+
+	/**
+	 * @param file transcript file, JSON lines or text.
+	 * @return sessions of the transcript, each one is the list of its rounds.
+	 * @throws IOException
+	 */
+	public static List<List<Round>> read(Path file) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			return read(reader);
+		}
+	}
+
+	/**
+	 * @param in transcript, JSON lines or text.
+	 * @return sessions of the transcript, each one is the list of its rounds.
+	 * @throws IOException
+	 */
+	public static List<List<Round>> read(Reader in) throws IOException {
+		List<List<Round>> sessions = new ArrayList<>();
+		stream(in, round -> {
+			if (sessions.isEmpty() || round.getNumber() == 1)
+				sessions.add(new ArrayList<>());
+			sessions.get(sessions.size() - 1).add(round);
+		});
+		return sessions;
+	}
+
+	/**
+	 * Hand out every round as soon as it is read.
+	 *
+	 * @param in transcript, JSON lines or text.
+	 * @param consumer gets the rounds in order.
+	 * @throws IOException
+	 */
+	public static void stream(Reader in, Consumer<Round> consumer) throws IOException {
+		BufferedReader reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+		reader.mark(1);
+		int first = reader.read();
+		reader.reset();
+		if (first == '{')
+			streamJson(reader, consumer);
+		else
+			streamText(reader, consumer);
+	}
+
+	private static void streamJson(BufferedReader reader, Consumer<Round> consumer) throws IOException {
+		String line;
+		for (int lineNumber = 1; (line = reader.readLine()) != null; lineNumber++) {
+			if (line.isBlank())
+				continue;
+			try {
+				consumer.accept(fromJson(line));
+			} catch (RuntimeException ex) {
+				throw new IOException("bad transcript line " + lineNumber + ": " + ex.getMessage(), ex);
+			}
+		}
+	}
+
+	private static void streamText(BufferedReader reader, Consumer<Round> consumer) throws IOException {
+		Round round = null;
+		int number = 1;
+		boolean relevant = false;
+		String url = null, title = null, line;
+		while ((line = reader.readLine()) != null) {
+			if (line.startsWith("ROUND ")) {
+				if (round != null)
+					consumer.accept(round);
+				round = null;
+				number = Integer.parseInt(line.substring(6).trim());
+			} else if (line.startsWith("QUERY ")) {
+				round = new Round(number, line.substring(6).trim(), Float.NaN);
+			} else if (line.startsWith("Relevant: ")) {
+				relevant = line.endsWith("YES");
+			} else if (line.startsWith(" URL: ")) {
+				url = line.substring(6);
+			} else if (line.startsWith(" Title: ")) {
+				title = line.substring(8);
+			} else if (line.startsWith(" Summary: ") && round != null) {
+				SingleResult sr = new SingleResult(url, title, line.substring(10));
+				sr.setIsRelevant(relevant);
+				round.getResults().add(sr);
+			} else if (line.startsWith("PRECISION ") && round != null) {
+				round.precision = Float.parseFloat(line.substring(10).trim());
+			}
+		}
+		if (round != null)
+			consumer.accept(round);
+	}
+
+	/**
+	 * @param round round to write.
+	 * @param out gets the round as one line of JSON, with the line break.
+	 * @throws IOException
+	 */
+	public static void writeJson(Round round, Appendable out) throws IOException {
+		out.append("{\"round\":").append(Integer.toString(round.number)).append(",\"query\":");
+		quote(round.query, out);
+		if (!Float.isNaN(round.precision))
+			out.append(",\"precision\":").append(Float.toString(round.precision));
+		out.append(",\"results\":[");
+		for (int i = 0; i < round.results.size(); i++) {
+			SingleResult sr = round.results.get(i);
+			out.append(i == 0 ? "{\"url\":" : ",{\"url\":");
+			quote(sr.getUrl(), out);
+			out.append(",\"title\":");
+			quote(sr.getTitle(), out);
+			out.append(",\"summary\":");
+			quote(sr.getSummary(), out);
+			out.append(",\"relevant\":").append(sr.getIsRelevant() ? "true}" : "false}");
+		}
+		out.append("]}\n");
+	}
+
+	/**
+	 * @param round round to write.
+	 * @param out gets the round as QueryCLI used to log it to transcript.txt.
+	 * @throws IOException
+	 */
+	public static void writeText(Round round, Appendable out) throws IOException {
+		String nl = System.lineSeparator();
+		out.append("=====================================").append(nl);
+		out.append("ROUND ").append(Integer.toString(round.number)).append(nl);
+		out.append("QUERY ").append(round.query).append(nl);
+		for (int i = 0; i < round.results.size(); i++) {
+			SingleResult sr = round.results.get(i);
+			out.append(nl).append("Result ").append(Integer.toString(i + 1)).append(nl);
+			out.append("Relevant: ").append(sr.getIsRelevant() ? "YES" : "NO").append(nl);
+			out.append(sr.toString().replace("\n", nl)).append(nl).append(nl);
+		}
+		if (!Float.isNaN(round.precision))
+			out.append("PRECISION ").append(Float.toString(round.precision)).append(nl);
+	}
+
+	private static void quote(String s, Appendable out) throws IOException {
+		if (s == null) {
+			out.append("null");
+			return;
+		}
+		out.append('"');
+		int start = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c >= 0x20 && c != '"' && c != '\\')
+				continue;
+			out.append(s, start, i);
+			switch (c) {
+			case '"':
+				out.append("\\\"");
+				break;
+			case '\\':
+				out.append("\\\\");
+				break;
+			case '\n':
+				out.append("\\n");
+				break;
+			case '\r':
+				out.append("\\r");
+				break;
+			case '\t':
+				out.append("\\t");
+				break;
+			default:
+				out.append(String.format("\\u%04x", (int) c));
+			}
+			start = i + 1;
+		}
+		out.append(s, start, s.length()).append('"');
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Round fromJson(String line) {
+		Map<String, Object> object = (Map<String, Object>) new JsonParser(line).parse();
+		Object precision = object.get("precision");
+		Round round = new Round(((Number) object.get("round")).intValue(), (String) object.get("query"),
+				precision == null ? Float.NaN : Float.parseFloat(precision.toString()));
+		for (Object o : (List<Object>) object.get("results")) {
+			Map<String, Object> result = (Map<String, Object>) o;
+			SingleResult sr = new SingleResult((String) result.get("url"), (String) result.get("title"),
+					(String) result.get("summary"));
+			sr.setIsRelevant(Boolean.TRUE.equals(result.get("relevant")));
+			round.getResults().add(sr);
+		}
+		return round;
+	}
+
+	/**
+	 * Class JsonParser: Just enough JSON for one line of the transcript. Numbers are kept as
+	 * their text in a JsonNumber, so a float precision reads back exactly.
+	 */
+	private static class JsonParser {
+		private final String s;
+		private int pos;
+
+		JsonParser(String s) {
+			this.s = s;
+		}
+
+		Object parse() {
+			Object value = value();
+			skipSpace();
+			if (pos != s.length())
+				throw error("end of line expected");
+			return value;
+		}
+
+		private Object value() {
+			skipSpace();
+			if (pos == s.length())
+				throw error("value expected");
+			char c = s.charAt(pos);
+			switch (c) {
+			case '{':
+				return object();
+			case '[':
+				return array();
+			case '"':
+				return string();
+			case 't':
+				return literal("true", Boolean.TRUE);
+			case 'f':
+				return literal("false", Boolean.FALSE);
+			case 'n':
+				return literal("null", null);
+			default:
+				return number();
+			}
+		}
+
+		private Map<String, Object> object() {
+			Map<String, Object> map = new HashMap<>();
+			pos++;
+			skipSpace();
+			if (peek() == '}') {
+				pos++;
+				return map;
+			}
+			for (;;) {
+				skipSpace();
+				if (peek() != '"')
+					throw error("name expected");
+				String name = string();
+				skipSpace();
+				expect(':');
+				map.put(name, value());
+				skipSpace();
+				if (peek() == '}') {
+					pos++;
+					return map;
+				}
+				expect(',');
+			}
+		}
+
+		private List<Object> array() {
+			List<Object> list = new ArrayList<>();
+			pos++;
+			skipSpace();
+			if (peek() == ']') {
+				pos++;
+				return list;
+			}
+			for (;;) {
+				list.add(value());
+				skipSpace();
+				if (peek() == ']') {
+					pos++;
+					return list;
+				}
+				expect(',');
+			}
+		}
+
+		private String string() {
+			pos++;
+			StringBuilder sb = new StringBuilder();
+			for (;;) {
+				if (pos >= s.length())
+					throw error("unterminated string");
+				char c = s.charAt(pos++);
+				if (c == '"')
+					return sb.toString();
+				if (c != '\\') {
+					sb.append(c);
+					continue;
+				}
+				if (pos >= s.length())
+					throw error("unterminated string");
+				char e = s.charAt(pos++);
+				switch (e) {
+				case 'n':
+					sb.append('\n');
+					break;
+				case 'r':
+					sb.append('\r');
+					break;
+				case 't':
+					sb.append('\t');
+					break;
+				case 'b':
+					sb.append('\b');
+					break;
+				case 'f':
+					sb.append('\f');
+					break;
+				case 'u':
+					if (pos + 4 > s.length())
+						throw error("bad escape");
+					sb.append((char) Integer.parseInt(s.substring(pos, pos + 4), 16));
+					pos += 4;
+					break;
+				default:
+					sb.append(e); // \" \\ \/
+				}
+			}
+		}
+
+		private Object literal(String word, Object value) {
+			if (!s.startsWith(word, pos))
+				throw error(word + " expected");
+			pos += word.length();
+			return value;
+		}
+
+		private Number number() {
+			int start = pos;
+			while (pos < s.length() && "+-0123456789.eE".indexOf(s.charAt(pos)) >= 0)
+				pos++;
+			if (start == pos)
+				throw error("value expected");
+			return new JsonNumber(s.substring(start, pos));
+		}
+
+		private char peek() {
+			if (pos >= s.length())
+				throw error("unexpected end of line");
+			return s.charAt(pos);
+		}
+
+		private void expect(char c) {
+			if (peek() != c)
+				throw error("'" + c + "' expected");
+			pos++;
+		}
+
+		private void skipSpace() {
+			while (pos < s.length() && Character.isWhitespace(s.charAt(pos)))
+				pos++;
+		}
+
+		private IllegalArgumentException error(String message) {
+			return new IllegalArgumentException(message + " at column " + (pos + 1));
+		}
+	}
+
+	/**
+	 * Class JsonNumber: A number as written.
+	 */
+	@SuppressWarnings("serial")
+	private static class JsonNumber extends Number {
+		private final String text;
+
+		JsonNumber(String text) {
+			this.text = text;
+		}
+
+		@Override
+		public int intValue() {
+			return Integer.parseInt(text);
+		}
+
+		@Override
+		public long longValue() {
+			return Long.parseLong(text);
+		}
+
+		@Override
+		public float floatValue() {
+			return Float.parseFloat(text);
+		}
+
+		@Override
+		public double doubleValue() {
+			return Double.parseDouble(text);
+		}
+
+		@Override
+		public String toString() {
+			return text;
+		}
+	}
+
+	/**
+	 * Print a transcript in the other format, the text view of JSON lines or JSON lines of a text transcript.
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("Usage: Transcript <transcript> [--json|--text]");
+			System.exit(1);
+		}
+		boolean json = args.length > 1 && args[1].equals("--json");
+		PrintStream out = new PrintStream(System.out, false, "UTF-8");
+		try (BufferedReader reader = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+			stream(reader, round -> {
+				try {
+					if (json)
+						writeJson(round, out);
+					else
+						writeText(round, out);
+				} catch (IOException ex) {
+					throw new IllegalStateException(ex);
+				}
+			});
+		}
+		out.flush();
+	}
+}
@@ -0,0 +1,186 @@
+package adb;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Class TranscriptWriter: Append rounds to the transcript from a background thread.
+ * The session only puts a round in a ring buffer, the writer thread takes every round waiting,
+ * writes them as JSON lines, and the text view too if asked, and flushes once per batch.
+ * When the ring is full append waits, so no round is lost. An error of the writer thread
+ * comes back from the next append, flush or close.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public class TranscriptWriter implements Closeable {
+	private final Transcript.Round[] ring;
+	private int head; // next round to write
+	private int size; // rounds waiting
+	private long appended, written; // rounds put in the ring, rounds written and flushed
+	private boolean closed;
+	private Exception failure; // of the writer thread, an IOException or a bug, rethrown to the session
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+	private final Condition progress = lock.newCondition(); // written moved on or the thread stopped
+
+	private final Writer json;
+	private final Writer text; // null for no text view
+	private final Thread thread;
+
+	/**
+	 * @param jsonFile JSON lines file, rounds are appended.
+	 * @param textFile text view, rounds are appended, null for none.
+	 * @param capacity rounds waiting at most.
+	 * @throws IOException
+	 */
+	public TranscriptWriter(Path jsonFile, Path textFile, int capacity) throws IOException {
+		ring = new Transcript.Round[capacity];
+		json = open(jsonFile);
+		text = textFile == null ? null : open(textFile);
+		thread = new Thread(this::drain, "transcript-writer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private static Writer open(Path file) throws IOException {
+		return new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+				StandardOpenOption.APPEND, StandardOpenOption.WRITE), 1 << 16);
+	}
+
+	/**
+	 * Queue a round, it is written later. Waits while the ring is full.
+	 *
+	 * @param round round to write, not changed afterwards.
+	 * @throws IOException if the writer failed or is closed.
+	 */
+	public void append(Transcript.Round round) throws IOException {
+		lock.lock();
+		try {
+			while (size == ring.length && failure == null && !closed)
+				notFull.awaitUninterruptibly();
+			check();
+			ring[(head + size) % ring.length] = round;
+			size++;
+			appended++;
+			notEmpty.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Wait until every round appended so far is written and flushed.
+	 *
+	 * @throws IOException if the writer failed or is closed.
+	 */
+	public void flush() throws IOException {
+		lock.lock();
+		try {
+			long target = appended;
+			while (written < target && failure == null && !closed)
+				progress.awaitUninterruptibly();
+			check();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Write every round appended and close the files.
+	 */
+	@Override
+	public void close() throws IOException {
+		lock.lock();
+		try {
+			if (closed)
+				return;
+			closed = true;
+			notEmpty.signal();
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		try {
+			thread.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			json.close();
+		} finally {
+			if (text != null)
+				text.close();
+		}
+		if (failure != null)
+			throw new IOException("transcript not written", failure);
+	}
+
+	private void check() throws IOException {
+		if (failure != null)
+			throw new IOException("transcript not written", failure);
+		if (closed)
+			throw new IOException("transcript closed");
+	}
+
+	private void drain() {
+		Transcript.Round[] batch = new Transcript.Round[ring.length];
+		for (;;) {
+			int n;
+			lock.lock();
+			try {
+				while (size == 0 && !closed)
+					notEmpty.awaitUninterruptibly();
+				if (size == 0)
+					return; // closed and empty
+				n = size;
+				for (int i = 0; i < n; i++) {
+					batch[i] = ring[(head + i) % ring.length];
+					ring[(head + i) % ring.length] = null;
+				}
+				head = (head + n) % ring.length;
+				size = 0;
+				notFull.signalAll();
+			} finally {
+				lock.unlock();
+			}
+			Exception error = null;
+			try {
+				for (int i = 0; i < n; i++) {
+					Transcript.writeJson(batch[i], json);
+					if (text != null)
+						Transcript.writeText(batch[i], text);
+					batch[i] = null;
+				}
+				json.flush();
+				if (text != null)
+					text.flush();
+			} catch (IOException | RuntimeException ex) {
+				// a round that can't be written stops the thread, the waiting session must hear of it
+				error = ex;
+			}
+			lock.lock();
+			try {
+				if (error != null) {
+					failure = error;
+					notFull.signalAll();
+				} else {
+					written += n;
+				}
+				progress.signalAll();
+				if (error != null)
+					return;
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package adb;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Class VectorKernels: DenseKernels on the incubator Vector API, as many doubles at a time as
+ * the cpu has lanes, the tail in plain java. Needs the jdk.incubator.vector module to compile
+ * and to load, DenseKernels.best() only loads it when the module is there.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+class VectorKernels implements DenseKernels {
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	@Override
+	public void centroid(double[] sum, double[] idf, double num, double[] out, int n) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+			DoubleVector s = DoubleVector.fromArray(SPECIES, sum, i);
+			s.mul(DoubleVector.fromArray(SPECIES, idf, i)).div(num).intoArray(out, i);
+		}
+		for (; i < n; i++) {
+			out[i] = sum[i] * idf[i] / num;
+		}
+	}
+
+	@Override
+	public void vectorMulConst(double[] v, double c, int n) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+			DoubleVector.fromArray(SPECIES, v, i).mul(c).intoArray(v, i);
+		}
+		for (; i < n; i++) {
+			v[i] *= c;
+		}
+	}
+
+	@Override
+	public void combine(double[] q, double[] dr, double[] dnr, double[] out, int n) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+			DoubleVector d = DoubleVector.fromArray(SPECIES, dr, i).sub(DoubleVector.fromArray(SPECIES, dnr, i));
+			DoubleVector w = DoubleVector.fromArray(SPECIES, q, i).add(d);
+			// a compare, not max(w, 0), so -0 and NaN become 0 as in the scalar loop
+			w.blend(0, w.compare(VectorOperators.GT, 0).not()).intoArray(out, i);
+		}
+		for (; i < n; i++) {
+			double w = q[i] + (dr[i] - dnr[i]);
+			out[i] = w > 0 ? w : 0;
+		}
+	}
+
+	@Override
+	public void rocchio(double[] q, double[] drSum, double drNum, double beta, double[] dnrSum, double dnrNum,
+			double gamma, double[] idf, double[] out, int n) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+			DoubleVector v = DoubleVector.fromArray(SPECIES, idf, i);
+			DoubleVector dr = DoubleVector.fromArray(SPECIES, drSum, i).mul(v).div(drNum).mul(beta);
+			DoubleVector dnr = DoubleVector.fromArray(SPECIES, dnrSum, i).mul(v).div(dnrNum).mul(gamma);
+			DoubleVector w = DoubleVector.fromArray(SPECIES, q, i).add(dr.sub(dnr));
+			w.blend(0, w.compare(VectorOperators.GT, 0).not()).intoArray(out, i);
+		}
+		for (; i < n; i++) {
+			double w = q[i] + (drSum[i] * idf[i] / drNum * beta - dnrSum[i] * idf[i] / dnrNum * gamma);
+			out[i] = w > 0 ? w : 0;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "vector " + SPECIES.length() + " lanes";
+	}
+}
@@ -0,0 +1,93 @@
+package adb;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Class WeightTable: Values of a TermWeighting looked up instead of computed, since tf, df
+ * and lengths are small integers. The tf table covers tf below MAX_TF and lengths below
+ * MAX_LENGTH, it is computed once per weighting and shared. The idf table belongs to one
+ * instance, it is filled as df come up and thrown away when the number of documents changes.
+ * Values outside the tables are computed. Not thread safe, every RelevanceFeedback has its own.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public class WeightTable {
+	static final int MAX_TF = 32;
+	static final int MAX_LENGTH = 128;
+	private static final int MAX_DF = 1 << 16;
+	// tf tables by weighting, weak so weightings parsed for a run go away with it
+	private static final Map<TermWeighting, double[][]> TF_TABLES = Collections.synchronizedMap(new WeakHashMap<>());
+
+	private final TermWeighting weighting;
+	private final double[] tf; // tf(t, l) at [l * MAX_TF + t]
+	private final double[] queryTf; // queryTf(t) at [t]
+	private double[] idf; // idf(df, documents) at [df], NaN if not computed yet
+	private long documents = -1; // documents of the idf table
+
+	/**
+	 * @param weighting weighting to look up.
+	 */
+	public WeightTable(TermWeighting weighting) {
+		this.weighting = weighting;
+		double[][] tables = TF_TABLES.computeIfAbsent(weighting, WeightTable::tfTables);
+		tf = tables[0];
+		queryTf = tables[1];
+		idf = new double[64];
+	}
+
+	private static double[][] tfTables(TermWeighting weighting) {
+		double[] tf = new double[MAX_LENGTH * MAX_TF];
+		double[] queryTf = new double[MAX_TF];
+		for (int t = 1; t < MAX_TF; t++) {
+			for (int length = 0; length < MAX_LENGTH; length++) {
+				tf[length * MAX_TF + t] = weighting.tf(t, length);
+			}
+			queryTf[t] = weighting.queryTf(t);
+		}
+		return new double[][] { tf, queryTf };
+	}
+
+	public TermWeighting getWeighting() {
+		return weighting;
+	}
+
+	/**
+	 * @see TermWeighting#tf(int, int)
+	 */
+	public double tf(int tf, int length) {
+		if (tf < MAX_TF && length < MAX_LENGTH)
+			return this.tf[length * MAX_TF + tf];
+		return weighting.tf(tf, length);
+	}
+
+	/**
+	 * @see TermWeighting#queryTf(int)
+	 */
+	public double queryTf(int tf) {
+		return tf < MAX_TF ? queryTf[tf] : weighting.queryTf(tf);
+	}
+
+	/**
+	 * @see TermWeighting#idf(long, long)
+	 */
+	public double idf(long df, long documents) {
+		if (df >= MAX_DF)
+			return weighting.idf(df, documents);
+		if (documents != this.documents) {
+			Arrays.fill(idf, Double.NaN);
+			this.documents = documents;
+		}
+		if (df >= idf.length) {
+			int old = idf.length;
+			idf = Arrays.copyOf(idf, (int) Math.min(MAX_DF, Math.max(2 * old, df + 1)));
+			Arrays.fill(idf, old, idf.length, Double.NaN);
+		}
+		double value = idf[(int) df];
+		if (Double.isNaN(value))
+			idf[(int) df] = value = weighting.idf(df, documents);
+		return value;
+	}
+}
@@ -0,0 +1,104 @@
+package adb;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Class BenchData: Inputs of the benchmarks, recorded rounds from the transcripts or synthetic rounds.
+ * A round is the ten SingleResult of one query with their relevance, like QueryCLI feeds them.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+public class BenchData {
+	static final String[] TRANSCRIPTS = { "transcript.txt", "transcript_sample.txt" };
+	static final int PAGE = 10;
+
+	/**
+	 * All results recorded in the transcripts, in order.
+	 *
+	 * @return results with their relevance.
+	 * @throws IOException
+	 */
+	static List<SingleResult> recorded() throws IOException {
+		List<SingleResult> results = new ArrayList<>();
+		for (String file : TRANSCRIPTS) {
+			for (List<Transcript.Round> session : Transcript.read(Paths.get(file))) {
+				for (Transcript.Round round : session) {
+					results.addAll(round.getResults());
+				}
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Rounds of a session, cut from the recorded results in order and repeated when
+	 * they run out. Urls get the round number, so every round brings new documents.
+	 *
+	 * @param recorded results from recorded().
+	 * @param rounds number of rounds.
+	 * @return rounds of PAGE results.
+	 */
+	static List<List<SingleResult>> recordedRounds(List<SingleResult> recorded, int rounds) {
+		List<List<SingleResult>> session = new ArrayList<>();
+		int next = 0;
+		for (int r = 0; r < rounds; r++) {
+			List<SingleResult> page = new ArrayList<>();
+			for (int i = 0; i < PAGE; i++) {
+				SingleResult src = recorded.get(next++ % recorded.size());
+				SingleResult sr = new SingleResult(src.getUrl() + "#" + r, src.getTitle(), src.getSummary());
+				sr.setIsRelevant(src.getIsRelevant());
+				page.add(sr);
+			}
+			session.add(page);
+		}
+		return session;
+	}
+
+	/**
+	 * Rounds of a session made of random words, word i is drawn with weight 1 / (i + 1)
+	 * like a natural vocabulary, so the vocabulary keeps growing with the rounds.
+	 *
+	 * @param rounds number of rounds.
+	 * @param seed random seed.
+	 * @return rounds of PAGE results, about 40% relevant.
+	 */
+	static List<List<SingleResult>> syntheticRounds(int rounds, long seed) {
+		Random random = new Random(seed);
+		List<List<SingleResult>> session = new ArrayList<>();
+		for (int r = 0; r < rounds; r++) {
+			List<SingleResult> page = new ArrayList<>();
+			for (int i = 0; i < PAGE; i++) {
+				SingleResult sr = new SingleResult("http://example.com/" + r + "/" + i, words(random, 8),
+						words(random, 25));
+				sr.setIsRelevant(random.nextInt(10) < 4);
+				page.add(sr);
+			}
+			session.add(page);
+		}
+		return session;
+	}
+
+	private static String words(Random random, int n) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < n; i++) {
+			// inverse of the harmonic distribution over 50000 words
+			int word = (int) Math.exp(random.nextDouble() * Math.log(50000));
+			sb.append(i == 0 ? "" : i % 7 == 0 ? ", " : " ").append("w").append(Integer.toString(word, 36));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @param source "recorded" or "synthetic".
+	 * @param rounds number of rounds.
+	 * @return rounds of the session.
+	 * @throws IOException
+	 */
+	static List<List<SingleResult>> rounds(String source, int rounds) throws IOException {
+		return source.equals("recorded") ? recordedRounds(recorded(), rounds) : syntheticRounds(rounds, 42);
+	}
+}
@@ -0,0 +1,88 @@
+package adb;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.binary.Base64;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Class FetchBench: Latency of one search against a local StandInServer, a new URLConnection
+ * per page as BingSearchBackend used to do against the shared HttpClient with concurrent pages.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FetchBench {
+	private static final String QUERY = "taj mahal";
+
+	@Param({ "1", "3" })
+	int pages;
+
+	@Param({ "0", "20" })
+	long latency;
+
+	private StandInServer server;
+	private BingSearchBackend backend;
+
+	@Setup
+	public void start() throws IOException {
+		List<SingleResult> recorded = BenchData.recorded();
+		List<SingleResult> results = new ArrayList<>(recorded.subList(0, BingSearchBackend.PAGE_SIZE * pages));
+		server = new StandInServer(query -> results, 4);
+		server.setLatency(latency);
+		server.start();
+		backend = new BingSearchBackend("bench", server.getEndpoint(), BingSearchBackend.newClient(Duration.ofSeconds(5)));
+		backend.setPages(pages);
+	}
+
+	@TearDown
+	public void stop() {
+		server.stop();
+	}
+
+	@Benchmark
+	public List<SingleResult> urlConnection() throws Exception {
+		List<SingleResult> results = new ArrayList<>();
+		for (int page = 0; page < pages; page++) {
+			String bingUrl = server.getEndpoint() + "?Query=%27" + URLEncoder.encode(QUERY, "UTF-8")
+					+ "%27&$top=10&$skip=" + page * 10 + "&$format=Atom";
+			byte[] accountKeyBytes = Base64.encodeBase64(("bench:bench").getBytes());
+			URLConnection urlConnection = new URL(bingUrl).openConnection();
+			urlConnection.setRequestProperty("Authorization", "Basic " + new String(accountKeyBytes));
+			try (InputStream in = (InputStream) urlConnection.getContent()) {
+				results.addAll(AtomParser.parse(in));
+			}
+		}
+		return results;
+	}
+
+	@Benchmark
+	public List<SingleResult> httpClient() throws Exception {
+		return backend.search(QUERY);
+	}
+}
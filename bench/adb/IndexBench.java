@@ -0,0 +1,76 @@
+package adb;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Class IndexBench: The top documents of a session under the last qm, from the InvertedIndex
+ * with MaxScore against the dot product of qm with docVector of every accumulated document.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexBench {
+	@Param({ "10", "100", "500" })
+	int rounds;
+
+	@Param({ "10" })
+	int k;
+
+	private RelevanceFeedback feedback;
+
+	@Setup
+	public void replay() throws IOException {
+		System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+		feedback = new RelevanceFeedback();
+		String query = "taj mahal";
+		for (List<SingleResult> page : BenchData.rounds("synthetic", rounds)) {
+			query = QueryExpansionBench.runRound(feedback, page, query);
+		}
+		feedback.rank(k); // builds the index, a session keeps it up to date from then on
+	}
+
+	@Benchmark
+	public List<String> index() {
+		return feedback.rank(k);
+	}
+
+	@Benchmark
+	public int[] scan() {
+		SparseVector qm = feedback.getLastQm();
+		TopK top = new TopK(k, TopK.LOWER_ID);
+		List<Term> terms = feedback.getTerms();
+		for (int d = 0; d < terms.size(); d++) {
+			SparseVector doc = feedback.docVector(terms.get(d));
+			double score = 0;
+			for (int j = 0; j < doc.nnz(); j++) {
+				score += doc.value(j) * qm.get(doc.index(j));
+			}
+			if (score > 0)
+				top.offer(d, score);
+		}
+		int[] docs = new int[k];
+		top.drain(docs, new double[k]);
+		return docs;
+	}
+}
@@ -0,0 +1,92 @@
+package adb;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Class KernelBench: the loops of the dense Rocchio path, scalar against the Vector API and
+ * one pass each against the fused one, over vocabularies from a session to a big corpus.
+ * The fork loads jdk.incubator.vector, so "best" is VectorKernels.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class KernelBench {
+	@Param({ "1000", "100000", "1000000" })
+	int vocabulary;
+
+	@Param({ "scalar", "best" })
+	String kernels;
+
+	private DenseKernels loops;
+	private double[] sum, idf, q, dr, dnr;
+
+	@Setup
+	public void fill() {
+		loops = kernels.equals("scalar") ? DenseKernels.SCALAR : DenseKernels.best();
+		Random random = new Random(7);
+		sum = new double[vocabulary];
+		idf = new double[vocabulary];
+		q = new double[vocabulary];
+		dr = new double[vocabulary];
+		dnr = new double[vocabulary];
+		for (int i = 0; i < vocabulary; i++) {
+			sum[i] = random.nextInt(4) == 0 ? 0 : 1 + random.nextDouble() * 5;
+			idf[i] = Math.log10(1 + 100.0 / (1 + random.nextInt(100)));
+			q[i] = random.nextInt(1000) == 0 ? 1 : 0;
+		}
+	}
+
+	@Benchmark
+	public double[] centroid() {
+		loops.centroid(sum, idf, 37, dr, vocabulary);
+		return dr;
+	}
+
+	@Benchmark
+	public double[] vectorMulConst() {
+		loops.vectorMulConst(dr, 0.75, vocabulary);
+		return dr;
+	}
+
+	@Benchmark
+	public double[] combine() {
+		loops.combine(q, sum, idf, dnr, vocabulary);
+		return dnr;
+	}
+
+	/** both centroids, their constants and the combine, one pass each. */
+	@Benchmark
+	public double[] rocchio() {
+		loops.centroid(sum, idf, 37, dr, vocabulary);
+		loops.centroid(sum, idf, 63, dnr, vocabulary);
+		loops.vectorMulConst(dr, RelevanceFeedback.BETA, vocabulary);
+		loops.vectorMulConst(dnr, RelevanceFeedback.GAMMA, vocabulary);
+		loops.combine(q, dr, dnr, dnr, vocabulary);
+		return dnr;
+	}
+
+	/** the same in one pass, as denseRocchio does. */
+	@Benchmark
+	public double[] fused() {
+		loops.rocchio(q, sum, 37, RelevanceFeedback.BETA, sum, 63, RelevanceFeedback.GAMMA, idf, dnr, vocabulary);
+		return dnr;
+	}
+}
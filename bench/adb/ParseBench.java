@@ -0,0 +1,58 @@
+package adb;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Class ParseBench: DOM parser QueryCLI.parseXml against the StAX AtomParser,
+ * over Atom feeds made of the recorded results.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBench {
+	@Param({ "10", "50", "500" })
+	int entries;
+
+	private byte[] feed;
+
+	@Setup
+	public void load() throws IOException {
+		List<SingleResult> recorded = BenchData.recorded();
+		List<SingleResult> results = new ArrayList<>();
+		for (int i = 0; i < entries; i++) {
+			results.add(recorded.get(i % recorded.size()));
+		}
+		feed = AtomFeed.write(results);
+	}
+
+	@Benchmark
+	public List<SingleResult> parseXml() throws Exception {
+		return QueryCLI.parseXml(new ByteArrayInputStream(feed));
+	}
+
+	@Benchmark
+	public List<SingleResult> atomParser() throws Exception {
+		return AtomParser.parse(new ByteArrayInputStream(feed));
+	}
+}
@@ -0,0 +1,105 @@
+package adb;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Class QueryExpansionBench: Latency of RelevanceFeedback.queryExpansion as the history grows.
+ * round measures one round at a given depth of history, session measures a whole session.
+ * Run with -prof gc for the allocation rate per round.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryExpansionBench {
+
+	@State(Scope.Thread)
+	public static class Session {
+		@Param({ "1", "10", "100", "200" })
+		int rounds;
+
+		@Param({ "recorded", "synthetic" })
+		String source;
+
+		List<List<SingleResult>> pages;
+
+		@Setup(Level.Trial)
+		public void load() throws IOException {
+			// penalty factor is printed every round
+			System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+			pages = BenchData.rounds(source, rounds);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class History {
+		RelevanceFeedback feedback; // went through all rounds but the last one
+		String query; // query of the last round
+
+		/**
+		 * Setup of every invocation is heavy for long sessions, but it is not measured.
+		 */
+		@Setup(Level.Invocation)
+		public void replay(Session session) {
+			feedback = new RelevanceFeedback();
+			query = "taj mahal";
+			for (int r = 0; r < session.rounds - 1; r++) {
+				query = runRound(feedback, session.pages.get(r), query);
+			}
+		}
+	}
+
+	/**
+	 * The last round of a session that already went through rounds - 1 rounds.
+	 */
+	@Benchmark
+	public String round(Session session, History history) {
+		return runRound(history.feedback, session.pages.get(session.rounds - 1), history.query);
+	}
+
+	/**
+	 * All the rounds of a session, from a new RelevanceFeedback.
+	 */
+	@Benchmark
+	public String session(Session session) {
+		RelevanceFeedback feedback = new RelevanceFeedback();
+		String query = "taj mahal";
+		for (List<SingleResult> page : session.pages) {
+			query = runRound(feedback, page, query);
+		}
+		return query;
+	}
+
+	/**
+	 * One round of QueryCLI: one more word for bad feedback, two for good feedback.
+	 */
+	static String runRound(RelevanceFeedback feedback, List<SingleResult> page, String query) {
+		int relevant = 0;
+		for (SingleResult sr : page) {
+			if (sr.getIsRelevant())
+				relevant++;
+		}
+		int number = (double) relevant / page.size() <= 0.5 ? 1 : 2;
+		return feedback.queryExpansion(number, page, query.split(" "));
+	}
+}
@@ -0,0 +1,107 @@
+package adb;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Class TokenizerBench: Tokenization of a batch of snippets, the regex split that
+ * preProcession used to do against Tokenizer, and ParallelTokenizer on the common pool with the merge.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenizerBench {
+	@Param({ "10", "1000" })
+	int batch;
+
+	@Param({ "recorded", "synthetic" })
+	String source;
+
+	private List<SingleResult> documents;
+	private Set<String> stop;
+	private Tokenizer tokenizer;
+	private TermDictionary dictionary;
+	private TermCounter counter;
+	private ParallelTokenizer parallel;
+
+	@Setup
+	public void load() throws IOException {
+		documents = BenchData.rounds(source, (batch + BenchData.PAGE - 1) / BenchData.PAGE).stream()
+				.flatMap(List::stream).limit(batch).collect(Collectors.toList());
+		stop = new HashSet<>(Files.readAllLines(Paths.get("stop.txt"), StandardCharsets.UTF_8));
+		tokenizer = new Tokenizer(StopWords.of(stop));
+		dictionary = new TermDictionary();
+		counter = new TermCounter();
+		parallel = new ParallelTokenizer(StopWords.of(stop), ForkJoinPool.commonPool());
+	}
+
+	@Benchmark
+	public int regexSplit() {
+		int words = 0;
+		for (SingleResult sr : documents) {
+			Pattern regex = Pattern.compile("[\\s\\p{Punct}|]+", Pattern.UNICODE_CHARACTER_CLASS);
+			String[] content = regex.split((sr.getTitle() + " " + sr.getSummary()).toLowerCase());
+			HashMap<String, Integer> tf = new HashMap<>();
+			for (String word : content) {
+				if (!stop.contains(word)) {
+					Integer freq = tf.get(word);
+					tf.put(word, freq == null ? 1 : freq + 1);
+				}
+			}
+			words += tf.size();
+		}
+		return words;
+	}
+
+	@Benchmark
+	public int tokenizer() {
+		int words = 0;
+		for (SingleResult sr : documents) {
+			tokenizer.tokenize(sr.getTitle(), sr.getSummary(), dictionary, counter);
+			words += counter.toTerm(0).getIds().length;
+		}
+		return words;
+	}
+
+	@Benchmark
+	public int parallelTokenizer() {
+		int words = 0;
+		for (ParallelTokenizer.Chunk chunk : parallel.tokenize(documents, null)) {
+			int[] global = new int[chunk.dictionary.size()];
+			Arrays.fill(global, -1);
+			for (int d = 0; d < chunk.lengths.length; d++) {
+				ParallelTokenizer.merge(chunk, d, global, dictionary, counter);
+				words += counter.toTerm(0).getIds().length;
+			}
+		}
+		return words;
+	}
+}
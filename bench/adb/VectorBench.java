@@ -0,0 +1,89 @@
+package adb;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Class VectorBench: docVector over every accumulated document and the centroids of dr and dnr
+ * after a session of some rounds, and picking the top words of a centroid with TopK against a full sort.
+ * Package: adb
+ * Advanced Database Systems Project 1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VectorBench {
+	@Param({ "1", "10", "100" })
+	int rounds;
+
+	@Param({ "recorded", "synthetic" })
+	String source;
+
+	private static final int TOP_WORDS = 10;
+
+	private RelevanceFeedback feedback;
+	private SparseVector qm;
+
+	@Setup
+	public void replay() throws IOException {
+		System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+		feedback = new RelevanceFeedback();
+		String query = "taj mahal";
+		for (List<SingleResult> page : BenchData.rounds(source, rounds)) {
+			query = QueryExpansionBench.runRound(feedback, page, query);
+		}
+		qm = feedback.getRocchioState().centroid(true, feedback.idfVector());
+	}
+
+	@Benchmark
+	public void docVector(Blackhole bh) {
+		for (Term term : feedback.getTerms()) {
+			bh.consume(feedback.docVector(term));
+		}
+	}
+
+	@Benchmark
+	public void centroid(Blackhole bh) {
+		double[] idf = feedback.idfVector();
+		bh.consume(feedback.getRocchioState().centroid(true, idf));
+		bh.consume(feedback.getRocchioState().centroid(false, idf));
+	}
+
+	@Benchmark
+	public void topWords(Blackhole bh) {
+		int[] ids = new int[TOP_WORDS];
+		double[] weights = new double[TOP_WORDS];
+		bh.consume(feedback.topWords(qm, new int[0], TOP_WORDS, ids, weights));
+		bh.consume(ids);
+	}
+
+	@Benchmark
+	public void sortWords(Blackhole bh) {
+		Integer[] order = new Integer[qm.nnz()];
+		for (int k = 0; k < order.length; k++) {
+			order[k] = k;
+		}
+		Arrays.sort(order, (a, b) -> Double.compare(qm.value(b), qm.value(a)));
+		bh.consume(order);
+	}
+}
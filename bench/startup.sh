@@ -0,0 +1,38 @@
+#!/bin/bash
+# Time from launching QueryCLI to its first results, started cold from the class files and
+# stop.txt, and fast from make fast, against a StandInServer that serves transcript_sample.txt,
+# which nothing appends to, like the training run of the CDS archive.
+# Usage: bench/startup.sh [runs]
+
+cd "$(dirname "$0")/.." || exit 1
+root=$(pwd)
+runs=${1:-5}
+make -s default fast > /dev/null || exit 1
+
+# QueryCLI writes transcript.txt to its working directory, keep it out of the project
+work=$(mktemp -d)
+java -cp "$root/lib/*:$root" adb.StandInServer transcript_sample.txt "$work/endpoint" &
+server=$!
+trap 'kill $server; rm -rf "$work"' EXIT
+while [ ! -s "$work/endpoint" ]; do
+	sleep 0.1
+done
+endpoint=$(cat "$work/endpoint")
+
+# every result relevant, so the session ends after the first round
+first_results() {
+	(cd "$work" && yes y | java -Dadb.endpoint="$endpoint" -Dadb.launched=$(date +%s%3N) "$@" key 0.9 "taj mahal" 2>&1 > /dev/null) \
+		| sed -n 's/.*first results \([0-9]*\) ms.*/\1/p'
+}
+
+for mode in cold fast; do
+	times=""
+	for i in $(seq "$runs"); do
+		if [ $mode == cold ]; then
+			times="$times $(first_results -cp "$root/lib/*:$root" adb.QueryCLI)"
+		else
+			times="$times $(first_results -XX:SharedArchiveFile="$root/build/adb.jsa" -Dadb.stopwords="$root/build/stop.bin" -XX:TieredStopAtLevel=1 -jar "$root/build/adb.jar")"
+		fi
+	done
+	echo "$mode:$times ms"
+done
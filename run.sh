@@ -1,11 +1,12 @@
 #!/bin/bash
 
 need_make=0
+fast=0
 
 check_para() {
 	if [ $1 -ne 3 ]; then
 	echo "Illegal number of parameters"
-	echo "run.sh <bing account key> <precision> <query>"
+	echo "run.sh [--fast] <bing account key> <precision> <query>"
 	exit 1
 	fi
 }
@@ -25,6 +26,19 @@ check_n_make() {
 	fi
 }
 
+# --fast runs the jar with the CDS archive and the stop word snapshot of make fast,
+# and only the quick JIT, a session is too short for the optimizing one to pay off
+if [ "$1" == "--fast" ]; then
+	fast=1
+	shift
+fi
 check_para $#
+if [ $fast == 1 ]; then
+	if [ ! -e build/adb.jsa ]; then
+		echo "[INFO] Fast start has not been built yet, build now..."
+		make fast
+	fi
+	exec java -XX:SharedArchiveFile=build/adb.jsa -Dadb.stopwords=build/stop.bin -XX:TieredStopAtLevel=1 -jar build/adb.jar "$@"
+fi
 check_n_make
 java -cp "lib/*:." adb.QueryCLI "$@"